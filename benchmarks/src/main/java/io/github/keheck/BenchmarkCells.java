@@ -0,0 +1,72 @@
+package io.github.keheck;
+
+import java.util.Random;
+
+/**
+ * The cells the benchmarks step, besides {@link Cell} and {@link ExampleCell}
+ */
+
+final class BenchmarkCells
+{
+    private BenchmarkCells() {}
+
+    /**
+     * @return the cell class the name stands for: "cell", "example", "life" or "cyclic"
+     */
+    static Class<? extends Cell> forName(String name)
+    {
+        switch(name)
+        {
+            case "cell": return Cell.class;
+            case "example": return ExampleCell.class;
+            case "life": return Life.class;
+            case "cyclic": return Cyclic.class;
+            default: throw new IllegalArgumentException("There is no cell called " + name);
+        }
+    }
+
+    /**
+     * Conway's Game of Life, a third of the cells start alive
+     */
+    public static final class Life extends Cell
+    {
+        @Override
+        public int getStates() { return 2; }
+
+        @Override
+        public Rule getRule() { return OuterTotalisticRule.LIFE; }
+
+        @Override
+        public void randomizeState(Random rand) { setState(rand.nextInt(3) == 0 ? 1 : 0); }
+    }
+
+    /**
+     * The next state is the sum of the cell and its neighbours modulo the number of
+     * states, which is set through {@link #setStates(int)} before the grid is created
+     */
+    public static final class Cyclic extends Cell
+    {
+        private static int states = 2;
+        private static Rule rule = rule(states);
+
+        static void setStates(int states)
+        {
+            Cyclic.states = states;
+            Cyclic.rule = rule(states);
+        }
+
+        private static Rule rule(int states)
+        {
+            return Rule.outerTotalistic(states, (state, sum) -> (state + sum) % states);
+        }
+
+        @Override
+        public int getStates() { return states; }
+
+        @Override
+        public Rule getRule() { return rule; }
+
+        @Override
+        public void randomizeState(Random rand) { setState(rand.nextInt(states)); }
+    }
+}
@@ -0,0 +1,89 @@
+package io.github.keheck;
+
+import org.openjdk.jmh.annotations.*;
+import processing.awt.PGraphicsJava2D;
+import processing.core.PGraphics;
+import processing.core.PVector;
+
+import java.awt.image.BufferedImage;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * How long {@link GridRenderer#show(Snapshot)} takes to draw a new generation of
+ * {@link ExampleCell}s into an offscreen {@link PGraphics} of 800x800 pixels, the
+ * way {@link CellularAutomatonAPI#draw()} does it, but without opening a window.
+ * Two snapshots take turns, so every frame shows a generation the renderer hasn't drawn yet.
+ */
+
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MILLISECONDS)
+@Warmup(iterations = 3, time = 2)
+@Measurement(iterations = 5, time = 2)
+@Fork(value = 1, jvmArgsAppend = "-Djava.awt.headless=true")
+@State(Scope.Benchmark)
+public class RenderBenchmark
+{
+    private static final int WINDOW = 800;
+    private static final int CELL_SIZE = 4;
+
+    @Param({"64", "512", "2048"})
+    public int size;
+
+    //1 shows 200x200 cells, the smaller ones zoom out up to the whole grid
+    @Param({"1", "0.25", "0.0625"})
+    public double scale;
+
+    @Param({"false", "true"})
+    public boolean strokes;
+
+    private PGraphics graphics;
+    private GridRenderer renderer;
+    private final Snapshot[] frames = new Snapshot[2];
+    private int frame;
+
+    @Setup(Level.Trial)
+    public void create()
+    {
+        CellularAutomatonAPI app = new CellularAutomatonAPI();
+        CellularAutomatonAPI.instance = app;
+        CellularAutomatonAPI.cam.pos = new PVector(0, 0);
+        CellularAutomatonAPI.cam.scale = scale;
+        app.withStroke = strokes;
+
+        graphics = new PGraphicsJava2D();
+        graphics.setParent(app);
+        graphics.setPrimary(false);
+        graphics.setSize(WINDOW, WINDOW);
+        graphics.smooth = 0;
+        //without it Processing asks for a screen to create the image, which fails headless
+        graphics.image = new BufferedImage(WINDOW, WINDOW, BufferedImage.TYPE_INT_ARGB);
+        app.g = graphics;
+
+        Grid grid = new Grid(size, size, ExampleCell.class);
+        grid.randomize();
+        renderer = new GridRenderer(grid, CELL_SIZE);
+
+        for(int i = 0; i < frames.length; i++)
+        {
+            grid.update();
+            frames[i] = new Snapshot(grid);
+            frames[i].copy(grid);
+        }
+    }
+
+    @Benchmark
+    public PGraphics show()
+    {
+        frame ^= 1;
+
+        graphics.beginDraw();
+        graphics.translate(WINDOW/2f, WINDOW/2f);
+        graphics.scale((float)scale);
+        graphics.translate(-WINDOW/2f, -WINDOW/2f);
+        graphics.background(0);
+        renderer.show(frames[frame]);
+        graphics.endDraw();
+
+        return graphics;
+    }
+}
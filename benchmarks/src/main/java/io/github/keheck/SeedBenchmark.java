@@ -0,0 +1,53 @@
+package io.github.keheck;
+
+import org.openjdk.jmh.annotations.*;
+
+import java.util.concurrent.TimeUnit;
+
+/**
+ * How fast {@link Grid#randomize()} seeds a grid, as seeded cells per second (the {@code cells} counter)
+ */
+
+@BenchmarkMode(Mode.Throughput)
+@OutputTimeUnit(TimeUnit.SECONDS)
+@Warmup(iterations = 3, time = 2)
+@Measurement(iterations = 5, time = 2)
+@Fork(value = 1, jvmArgsAppend = "-Djava.awt.headless=true")
+@State(Scope.Benchmark)
+public class SeedBenchmark
+{
+    @Param({"64", "512", "2048"})
+    public int size;
+
+    @Param({"example", "life", "cyclic"})
+    public String rule;
+
+    //"cells" calls randomizeState() on every cell, "distribution" draws the states straight into the grid
+    @Param({"cells", "distribution"})
+    public String mode;
+
+    @Param({"1", "4"})
+    public int threads;
+
+    private Grid grid;
+
+    @Setup(Level.Trial)
+    public void create()
+    {
+        BenchmarkCells.Cyclic.setStates(256);
+        Settings.threads = threads;
+        grid = new Grid(size, size, BenchmarkCells.forName(rule));
+        Settings.threads = 1;
+
+        //read by every randomize()
+        Settings.seed = 42L;
+        Settings.distribution = mode.equals("distribution") ? new double[] {2, 1} : null;
+    }
+
+    @Benchmark
+    public void randomize(StepBenchmark.Cells counter)
+    {
+        grid.randomize();
+        counter.cells += (long)size*size;
+    }
+}
@@ -0,0 +1,160 @@
+package io.github.keheck;
+
+import org.openjdk.jmh.annotations.*;
+
+import java.util.concurrent.TimeUnit;
+
+/**
+ * How fast {@link Grid#update()} steps, as cell updates per second (the {@code cells}
+ * counter; {@link Engine#HASHLIFE} counts every generation it skips as well).
+ * Every iteration starts from the same random states, so the grid doesn't die out.
+ *
+ * There is a benchmark for every axis, so no combination is run that the grid would reject:
+ * <ul>
+ *     <li>{@link #rules}: {@link Cell}, {@link ExampleCell} and a Life-like cell, all
+ *         with {@link Engine#CELLS}</li>
+ *     <li>{@link #engines}: every engine stepping the Game of Life</li>
+ *     <li>{@link #states}: a rule with 2 to 1024 states with and without its lookup table</li>
+ *     <li>{@link #vector}: {@link Engine#VECTOR} against the scalar {@link Engine#TABLE} for
+ *         multi-state rules</li>
+ * </ul>
+ * The benchmarks run with the Vector API module, otherwise {@link Engine#VECTOR} would step
+ * just like {@link Engine#TABLE}.
+ */
+
+@BenchmarkMode(Mode.Throughput)
+@OutputTimeUnit(TimeUnit.SECONDS)
+@Warmup(iterations = 3, time = 2)
+@Measurement(iterations = 5, time = 2)
+@Fork(value = 1, jvmArgsAppend = {"-Djava.awt.headless=true", "--add-modules=jdk.incubator.vector"})
+public class StepBenchmark
+{
+    @Benchmark
+    public void rules(Rules automaton, Cells counter) { counter.cells += automaton.step(); }
+
+    @Benchmark
+    public void engines(Engines automaton, Cells counter) { counter.cells += automaton.step(); }
+
+    @Benchmark
+    public void states(States automaton, Cells counter) { counter.cells += automaton.step(); }
+
+    @Benchmark
+    public void vector(Vector automaton, Cells counter) { counter.cells += automaton.step(); }
+
+    @State(Scope.Benchmark)
+    public abstract static class Automaton
+    {
+        @Param({"64", "512", "2048"})
+        public int size;
+
+        //keeps the states in direct buffers, see Initializer#setOffHeap(boolean)
+        @Param({"false", "true"})
+        public boolean offHeap;
+
+        Grid grid;
+        //the random states every iteration starts with
+        private StateBuffer seed;
+
+        void create(Class<? extends Cell> clazz, Engine engine)
+        {
+            Settings.engine = engine;
+            Settings.offHeap = offHeap;
+            grid = new Grid(size, size, clazz);
+            Settings.engine = Engine.AUTO;
+            Settings.offHeap = false;
+
+            grid.randomize();
+            seed = grid.copyStates(null);
+        }
+
+        /**
+         * restores the random states, unlike {@link Grid#randomize()} it doesn't allocate,
+         * so the GC profiler only sees what stepping allocates
+         */
+        @Setup(Level.Iteration)
+        public void reseed()
+        {
+            //drops what grew outside of an unbounded grid as well
+            grid.resetGrid();
+
+            for(int y = 0; y < size; y++)
+                for(int x = 0; x < size; x++)
+                    grid.setState(x, y, seed.get(grid.index(x, y)));
+
+            grid.invalidate();
+        }
+
+        /**
+         * @return how many cells were updated
+         */
+        long step()
+        {
+            grid.update();
+            return (long)size*size*grid.getGenerationsPerUpdate();
+        }
+    }
+
+    public static class Rules extends Automaton
+    {
+        @Param({"cell", "example", "life"})
+        public String rule;
+
+        @Setup(Level.Trial)
+        public void create() { create(BenchmarkCells.forName(rule), Engine.CELLS); }
+    }
+
+    public static class Engines extends Automaton
+    {
+        @Param({"CELLS", "TABLE", "VECTOR", "BIT_PACKED", "HASHLIFE", "CHUNKED"})
+        public Engine engine;
+
+        @Setup(Level.Trial)
+        public void create() { create(BenchmarkCells.Life.class, engine); }
+    }
+
+    public static class States extends Automaton
+    {
+        @Param({"2", "16", "256", "1024"})
+        public int states;
+
+        @Param({"CELLS", "TABLE", "CHUNKED"})
+        public Engine engine;
+
+        @Setup(Level.Trial)
+        public void create()
+        {
+            BenchmarkCells.Cyclic.setStates(states);
+            create(BenchmarkCells.Cyclic.class, engine);
+        }
+    }
+
+    public static class Vector extends Automaton
+    {
+        //the default rule of Cell as a table (8 states) and a cyclic rule with 16 states
+        @Param({"example", "cyclic"})
+        public String rule;
+
+        @Param({"TABLE", "VECTOR"})
+        public Engine engine;
+
+        @Setup(Level.Trial)
+        public void create()
+        {
+            BenchmarkCells.Cyclic.setStates(16);
+            create(BenchmarkCells.forName(rule), engine);
+        }
+    }
+
+    /**
+     * Counts the updated cells, JMH reports them per second
+     */
+    @State(Scope.Thread)
+    @AuxCounters(AuxCounters.Type.OPERATIONS)
+    public static class Cells
+    {
+        public long cells;
+
+        @Setup(Level.Iteration)
+        public void reset() { cells = 0; }
+    }
+}
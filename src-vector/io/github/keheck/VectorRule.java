@@ -0,0 +1,131 @@
+package io.github.keheck;
+
+import jdk.incubator.vector.ByteVector;
+import jdk.incubator.vector.IntVector;
+import jdk.incubator.vector.VectorOperators;
+import jdk.incubator.vector.VectorShape;
+import jdk.incubator.vector.VectorSpecies;
+
+/**
+ * Steps a {@link Rule} with the Vector API ({@code jdk.incubator.vector}), see {@link Engine#VECTOR}.
+ * Unlike the rest of the API it's compiled for Java 17, so it's only loaded by {@link Rule#vectorized()}
+ * once it's sure the module is there (the JVM has to be started with {@code --add-modules jdk.incubator.vector}).
+ *
+ * A row is stepped as many cells at a time as there are lanes in the widest int vector of the CPU:
+ * the states of the cells and of each of their neighbours are loaded as bytes, widened into ints and
+ * summed up with their weights into the indices of the table, just like {@link Rule#step} does it for
+ * one cell after the other. The next states are then looked up one after the other: gathering them
+ * from the table with a vector is a lot slower, at least with the Vector API of Java 17.
+ * Only states kept in a {@code byte[]} (up to 256 states, on the heap) are stepped like that; the
+ * other buffers and the cells at the end of a row that don't fill a whole vector are left to
+ * {@link Rule#step}.
+ */
+
+final class VectorRule extends Rule
+{
+    private static final VectorSpecies<Integer> INTS = IntVector.SPECIES_PREFERRED;
+    private static final int LANES = INTS.length();
+
+    private final int[] table;
+    private final int[] weights;
+    private final int self;
+    //whether every weight is 1, so the neighbours only have to be added up
+    private final boolean unweighted;
+    //whether the neighbours only count as alive or dead, see Kind#LIFE_LIKE
+    private final boolean alive;
+    //the bytes loaded for one int vector
+    private final VectorSpecies<Byte> bytes;
+
+    private VectorRule(Rule rule)
+    {
+        super(rule);
+
+        boolean unweighted = true;
+
+        for(int weight : rule.getWeights())
+            unweighted &= weight == 1;
+
+        this.table = rule.getTable();
+        this.weights = rule.getWeights();
+        this.self = rule.getSelfWeight();
+        this.unweighted = unweighted;
+        this.alive = rule.getKind() == Kind.LIFE_LIKE;
+        this.bytes = VectorSpecies.of(byte.class, VectorShape.forBitSize(INTS.vectorBitSize()/4));
+    }
+
+    /**
+     * called through reflection by {@link Rule#vectorized()}
+     * @return the rule stepped with vectors, or the given one if the CPU doesn't have vectors of at
+     *         least 256 bits (the narrower ones are emulated, which is slower than the scalar loop)
+     */
+    static Rule of(Rule rule)
+    {
+        if(INTS.vectorBitSize() < 256)
+            return rule;
+
+        return new VectorRule(rule);
+    }
+
+    @Override
+    boolean step(StateBuffer from, StateBuffer to, int origin, int stride, int[] deltas, int fromX, int toX, int fromY, int toY)
+    {
+        byte[] states = from.bytes();
+        byte[] next = to.bytes();
+
+        if(states == null || next == null)
+            return super.step(from, to, origin, stride, deltas, fromX, toX, fromY, toY);
+
+        //one per call, since the bands share the rule
+        int[] indices = new int[LANES];
+        int vectorTo = fromX + (toX-fromX)/LANES*LANES;
+        boolean changed = false;
+
+        for(int y = fromY; y < toY; y++)
+        {
+            int row = origin + y*stride;
+
+            for(int cell = row+fromX; cell < row+vectorTo; cell += LANES)
+            {
+                IntVector state = load(states, cell);
+                IntVector index = (alive ? state.min(1) : state).mul(self);
+
+                for(int i = 0; i < deltas.length; i++)
+                {
+                    IntVector neighbour = load(states, cell + deltas[i]);
+
+                    if(alive)
+                        neighbour = neighbour.min(1);
+
+                    index = index.add(unweighted ? neighbour : neighbour.mul(weights[i]));
+                }
+
+                index.intoArray(indices, 0);
+
+                int difference = 0;
+
+                for(int lane = 0; lane < LANES; lane++)
+                {
+                    int result = table[indices[lane]];
+                    difference |= result ^ states[cell+lane] & 0xFF;
+                    next[cell+lane] = (byte)result;
+                }
+
+                changed |= difference != 0;
+            }
+        }
+
+        if(vectorTo < toX)
+            changed |= super.step(from, to, origin, stride, deltas, vectorTo, toX, fromY, toY);
+
+        return changed;
+    }
+
+    /**
+     * @return the states from {@code cell} on, as ints
+     */
+    private IntVector load(byte[] states, int cell)
+    {
+        //the bytes are signed, the states above 127 would turn negative
+        return ByteVector.fromArray(bytes, states, cell).convertShape(VectorOperators.B2I, INTS, 0).reinterpretAsInts().and(0xFF);
+    }
+}
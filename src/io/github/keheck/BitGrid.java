@@ -0,0 +1,223 @@
+package io.github.keheck;
+
+/**
+ * The cells of a two-state grid packed into {@code long}s, 64 cells per word
+ * (see {@link Engine#BIT_PACKED}). The cell at (x|y) is bit {@code x % 64} of
+ * word {@code y*wordsPerRow + x/64}; the bits behind the last cell of a row are
+ * always 0.
+ *
+ * A generation is computed word by word: the eight neighbours of all 64 cells
+ * are summed up with bit-sliced adders into four bit planes, which are then
+ * compared against the counts of the {@link OuterTotalisticRule}. Cells outside
+ * the grid count as dead, just like with {@link Engine#CELLS}.
+ */
+
+final class BitGrid
+{
+    private final int width;
+    private final int height;
+    private final int wordsPerRow;
+    private final long lastMask;
+    //the neighbour counts a cell is born with/survives with
+    private final int[] birth;
+    private final int[] survival;
+    private long[] current;
+    private long[] next;
+
+    BitGrid(int width, int height, OuterTotalisticRule rule)
+    {
+        this.width = width;
+        this.height = height;
+        this.wordsPerRow = (width+63) >>> 6;
+        this.lastMask = (width & 63) == 0 ? -1L : (1L << (width & 63)) - 1;
+        this.birth = counts(rule.getBirth());
+        this.survival = counts(rule.getSurvival());
+        this.current = new long[wordsPerRow*height];
+        this.next = new long[wordsPerRow*height];
+    }
+
+    private static int[] counts(int mask)
+    {
+        int[] counts = new int[Integer.bitCount(mask)];
+
+        for(int count = 0, i = 0; count <= 8; count++)
+            if((mask >> count & 1) != 0)
+                counts[i++] = count;
+
+        return counts;
+    }
+
+    /**
+     * packs the given states, every state but 0 is alive
+     * @param origin the index of the cell at (0|0)
+     * @param stride the index distance between two rows
+     */
+    void load(StateBuffer states, int origin, int stride)
+    {
+        for(int y = 0; y < height; y++)
+        {
+            for(int w = 0; w < wordsPerRow; w++)
+            {
+                long word = 0;
+                int x0 = w << 6;
+
+                for(int bit = 0; bit < 64 && x0+bit < width; bit++)
+                    if(states.get(origin + y*stride + x0+bit) != 0)
+                        word |= 1L << bit;
+
+                current[y*wordsPerRow + w] = word;
+            }
+        }
+    }
+
+    /**
+     * unpacks the current generation into the given states
+     * @param origin the index of the cell at (0|0)
+     * @param stride the index distance between two rows
+     */
+    void store(StateBuffer states, int origin, int stride)
+    {
+        for(int y = 0; y < height; y++)
+        {
+            for(int w = 0; w < wordsPerRow; w++)
+            {
+                long word = current[y*wordsPerRow + w];
+                int x0 = w << 6;
+
+                for(int bit = 0; bit < 64 && x0+bit < width; bit++)
+                    states.set(origin + y*stride + x0+bit, (int)(word >>> bit) & 1);
+            }
+        }
+    }
+
+    /**
+     * computes the rows from {@code fromY} (inclusive) to {@code toY} (exclusive)
+     * of the next generation
+     */
+    void step(int fromY, int toY)
+    {
+        for(int y = fromY; y < toY; y++)
+        {
+            int row = y*wordsPerRow;
+            int above = y > 0 ? row-wordsPerRow : -1;
+            int below = y < height-1 ? row+wordsPerRow : -1;
+
+            for(int w = 0; w < wordsPerRow; w++)
+            {
+                long upW = word(above, w-1), up = word(above, w), upE = word(above, w+1);
+                long midW = word(row, w-1), mid = current[row+w], midE = word(row, w+1);
+                long downW = word(below, w-1), down = word(below, w), downE = word(below, w+1);
+
+                //the neighbour to the west/east of every cell, moved onto the cell's bit
+                long a = up << 1 | upW >>> 63;
+                long b = up;
+                long c = up >>> 1 | upE << 63;
+                long d = mid << 1 | midW >>> 63;
+                long e = mid >>> 1 | midE << 63;
+                long f = down << 1 | downW >>> 63;
+                long g = down;
+                long h = down >>> 1 | downE << 63;
+
+                //full adders for the ones
+                long abc = a ^ b ^ c;
+                long abcCarry = (a & b) | (c & (a ^ b));
+                long def = d ^ e ^ f;
+                long defCarry = (d & e) | (f & (d ^ e));
+                long gh = g ^ h;
+                long ghCarry = g & h;
+
+                long bit0 = abc ^ def ^ gh;
+                long onesCarry = (abc & def) | (gh & (abc ^ def));
+
+                //the twos: abcCarry + defCarry + ghCarry + onesCarry
+                long twos = abcCarry ^ defCarry ^ ghCarry;
+                long twosCarry = (abcCarry & defCarry) | (ghCarry & (abcCarry ^ defCarry));
+                long bit1 = twos ^ onesCarry;
+                long fours = twos & onesCarry;
+
+                long bit2 = twosCarry ^ fours;
+                long bit3 = twosCarry & fours;
+
+                long born = 0;
+                long survived = 0;
+
+                for(int count : birth)
+                    born |= equal(count, bit0, bit1, bit2, bit3);
+                for(int count : survival)
+                    survived |= equal(count, bit0, bit1, bit2, bit3);
+
+                long result = (~mid & born) | (mid & survived);
+
+                if(w == wordsPerRow-1)
+                    result &= lastMask;
+
+                next[row+w] = result;
+            }
+        }
+    }
+
+    private long word(int row, int w)
+    {
+        if(row < 0 || w < 0 || w >= wordsPerRow)
+            return 0;
+
+        return current[row+w];
+    }
+
+    /**
+     * @return a mask of every cell whose neighbour count (given as bit planes) equals {@code count}
+     */
+    private static long equal(int count, long bit0, long bit1, long bit2, long bit3)
+    {
+        return ((count & 1) != 0 ? bit0 : ~bit0) &
+               ((count & 2) != 0 ? bit1 : ~bit1) &
+               ((count & 4) != 0 ? bit2 : ~bit2) &
+               ((count & 8) != 0 ? bit3 : ~bit3);
+    }
+
+    /**
+     * only meaningful between {@link #step(int, int)} and {@link #swap()}
+     * @return how the hash of the grid (see {@link CycleDetector}) changes with the cells
+     *         that changed in the given rows
+     */
+    long hashChanges(int fromY, int toY)
+    {
+        long changes = 0;
+
+        for(int y = fromY; y < toY; y++)
+        {
+            for(int w = 0; w < wordsPerRow; w++)
+            {
+                //a cell that changed was either born or died, so its key comes or goes
+                for(long flipped = current[y*wordsPerRow + w] ^ next[y*wordsPerRow + w]; flipped != 0; flipped &= flipped-1)
+                    changes ^= CycleDetector.key((w << 6) + Long.numberOfTrailingZeros(flipped), y, 1);
+            }
+        }
+
+        return changes;
+    }
+
+    /**
+     * makes the computed generation the current one
+     */
+    void swap()
+    {
+        long[] previous = current;
+        current = next;
+        next = previous;
+    }
+
+    /**
+     * only meaningful right after {@link #swap()}
+     * @return how many cells changed their state in the last generation
+     */
+    int getChangedCells()
+    {
+        int changed = 0;
+
+        for(int i = 0; i < current.length; i++)
+            changed += Long.bitCount(current[i] ^ next[i]);
+
+        return changed;
+    }
+}
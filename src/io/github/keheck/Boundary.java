@@ -0,0 +1,56 @@
+package io.github.keheck;
+
+/**
+ * What the cells at the edges of the grid see when their neighbourhood reaches
+ * over the edge (see {@link Initializer#setBoundary(Boundary)}).
+ *
+ * The {@link Grid} surrounds its cells with a halo as wide as the radius of the
+ * {@link NeighbourhoodShape} and fills it according to the boundary before every
+ * generation, so the rules never have to check whether a neighbour is inside the grid.
+ */
+
+public enum Boundary
+{
+    /**
+     * Cells outside the grid don't count as neighbours: {@link Neighbourhood#size()}
+     * gets smaller at the edges and they read as state 0.
+     */
+    TRUNCATED,
+    /**
+     * Cells outside the grid are neighbours in the state set by
+     * {@link Initializer#setBoundaryState(int)}.
+     */
+    FIXED,
+    /**
+     * The grid wraps around: the right edge touches the left one and
+     * the bottom edge touches the top one.
+     */
+    TOROIDAL,
+    /**
+     * The grid is mirrored at its edges, the cell at -1 is the cell at 0,
+     * the cell at -2 the one at 1 and so on.
+     */
+    REFLECTIVE;
+
+    /**
+     * @param coordinate a coordinate along one axis of the grid
+     * @param size the size of the grid along that axis
+     * @return the coordinate inside the grid the given one stands for, or -1 if it doesn't stand for any
+     */
+    int map(int coordinate, int size)
+    {
+        if(coordinate >= 0 && coordinate < size)
+            return coordinate;
+
+        switch(this)
+        {
+            case TOROIDAL:
+                return Math.floorMod(coordinate, size);
+            case REFLECTIVE:
+                int mirrored = Math.floorMod(coordinate, 2*size);
+                return mirrored < size ? mirrored : 2*size-1 - mirrored;
+            default:
+                return -1;
+        }
+    }
+}
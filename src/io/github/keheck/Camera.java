@@ -4,6 +4,9 @@ import processing.core.PVector;
 
 final class Camera
 {
+    //how far the camera zooms out, far enough to see large grids as a whole
+    private static final double MIN_SCALE = 1/64.0;
+
     PVector pos;
     private boolean dragging;
 
@@ -21,7 +24,7 @@ final class Camera
 
     void up()
     {
-        scale += .1;
+        scale = scale < .5 ? scale*1.25 : scale+.1;
 
         if(scale > 2)
             scale = 2;
@@ -29,10 +32,31 @@ final class Camera
 
     void down()
     {
-        scale -= .1;
+        scale = scale > .5 ? scale-.1 : scale/1.25;
+
+        if(scale < MIN_SCALE)
+            scale = MIN_SCALE;
+    }
 
-        if(scale < .5)
-            scale = .5;
+    /**
+     * undoes the transformation of {@link CellularAutomatonAPI#draw()}
+     * @param screenX an x coordinate in the window
+     * @return the x coordinate the grid is drawn at there
+     */
+    double toWorldX(double screenX)
+    {
+        double center = CellularAutomatonAPI.instance.g.width/2.0;
+        return (screenX-center)/scale + center - pos.x;
+    }
+
+    /**
+     * @param screenY a y coordinate in the window
+     * @return the y coordinate the grid is drawn at there
+     */
+    double toWorldY(double screenY)
+    {
+        double center = CellularAutomatonAPI.instance.g.height/2.0;
+        return (screenY-center)/scale + center - pos.y;
     }
 
     void update()
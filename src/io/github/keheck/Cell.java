@@ -6,16 +6,25 @@ import java.util.Random;
 /**
  * The interface used by the {@link Grid} class
  * to display every single cell and perform
- * the given ruleset. It has a copy function
- * used by the {@link Grid#update()} function
- * to perform the ruleset without manipulating the new layout
+ * the given ruleset. The {@link Grid} only keeps
+ * the states of the cells; a single instance of the
+ * class is used for every cell, its state is set right
+ * before any of the methods is called. Fields declared
+ * in a subclass are therefore not kept per cell; values
+ * that are have to be declared as {@link Channel}s
+ * (see {@link #getChannels()}).
  *
+ * @see Cell#changeState(Neighbourhood)
  * @see Cell#changeState(Cell[])
  */
 
 public class Cell
 {
     private int state = 0;
+    //the channels of the cell that is currently updated/drawn, see bindChannels()
+    private Channels reads;
+    private Channels writes;
+    private int index;
 
     Cell(int state) { this.state = state; }
 
@@ -44,12 +53,124 @@ public class Cell
     }
 
     /**
-     * @return the number of possible states (only used for cycling the cell state on click)
+     * The ruleset applied every step, reading the surrounding cells
+     * through a {@link Neighbourhood} instead of an array. Override
+     * this instead of {@link #changeState(Cell[])} if you want to
+     * skip building the array for every cell.
+     *
+     * By default the rule declared by {@link #getRule()} is applied, or, if there
+     * is none, the neighbours are handed to {@link #changeState(Cell[])}
+     *
+     * @param neighbours the cells surrounding <b>this</b> cell
+     */
+    public void changeState(Neighbourhood neighbours)
+    {
+        Rule rule = getRule();
+
+        if(rule != null)
+            setState(rule.next(getState(), neighbours));
+        else
+            changeState(neighbours.toCells());
+    }
+
+    /**
+     * Declares the ruleset as a table (see {@link Rule}) instead of code. Cells
+     * declaring a rule are stepped by {@link Engine#TABLE} by default, which looks
+     * up the next state instead of calling changeState for every cell. Engines
+     * like {@link Engine#HASHLIFE} and {@link Engine#BIT_PACKED} need a two-state
+     * {@link OuterTotalisticRule} (like {@code B3/S23}); two-state cells declaring
+     * one are stepped by {@link Engine#BIT_PACKED} by default.
+     *
+     * @return the rule, or {@code null} if the ruleset is only defined by the changeState methods
+     */
+    public Rule getRule() { return null; }
+
+    /**
+     * The number of states also decides how much memory the {@link Grid} reserves per cell:
+     * up to 256 states take one byte, up to 65536 states two bytes, everything above four bytes.
+     * States are never negative and must fit into that width.
+     *
+     * @return the number of possible states (used for cycling the cell state on click)
      */
     public int getStates() { return 1; }
 
     /**
-     * @return the customized stroke color, if {@link CellularAutomatonAPI#withStroke} is true
+     * Declares the values every cell keeps besides its state (see {@link Channel}).
+     * Cells declaring channels are always stepped by {@link Engine#CELLS}, without
+     * {@link Initializer#setChangeTracking(boolean)} and {@link Initializer#setCycleDetection(int)},
+     * since a cell may change its channels while its state stays the same.
+     *
+     * @return the channels, always the same ones in the same order
+     */
+    public Channel[] getChannels() { return new Channel[0]; }
+
+    /**
+     * @return the value of the channel in the previous generation while the state changes,
+     * otherwise in the current one
+     */
+    public final int getInt(Channel channel) { return reading().getInt(channel, index); }
+
+    /**
+     * Sets the value of the channel in the next generation. A channel that isn't set
+     * while the state changes keeps its value.
+     */
+    public final void setInt(Channel channel, int value) { writing().setInt(channel, index, value); }
+
+    /**
+     * @see #getInt(Channel)
+     */
+    public final float getFloat(Channel channel) { return reading().getFloat(channel, index); }
+
+    /**
+     * @see #setInt(Channel, int)
+     */
+    public final void setFloat(Channel channel, float value) { writing().setFloat(channel, index, value); }
+
+    /**
+     * @see #getInt(Channel)
+     */
+    public final byte getByte(Channel channel) { return reading().getByte(channel, index); }
+
+    /**
+     * @see #setInt(Channel, int)
+     */
+    public final void setByte(Channel channel, byte value) { writing().setByte(channel, index, value); }
+
+    /**
+     * lets the channel getters read from {@code reads} and the setters write to {@code writes}
+     * (which may be {@code null} if they may not be set)
+     */
+    final void bindChannels(Channels reads, Channels writes)
+    {
+        this.reads = reads;
+        this.writes = writes;
+    }
+
+    /**
+     * points the channel getters and setters to the cell at the given index
+     */
+    final void setIndex(int index) { this.index = index; }
+
+    private Channels reading()
+    {
+        if(reads == null)
+            throw new IllegalStateException("The channels can only be read while a cell is updated, randomized or drawn");
+
+        return reads;
+    }
+
+    private Channels writing()
+    {
+        if(writes == null)
+            throw new IllegalStateException("The channels can only be set while a cell is updated or randomized");
+
+        return writes;
+    }
+
+    /**
+     * @return the customized stroke color, if {@link CellularAutomatonAPI#withStroke} is true.
+     * It's only queried once for every state, so it may depend on nothing but the state
+     * (not even on the channels).
      */
     public Color getStrokeColor() { return new Color(0); }
 
@@ -65,7 +186,10 @@ public class Cell
     public final int getState() { return state; }
 
     /**
-     * @return the color of the current state (fully customizeable)
+     * @return the color of the current state (fully customizeable). It's only
+     * queried once for every state, so it may depend on nothing but the state,
+     * unless the cell declares channels: then it's queried for every cell that is
+     * drawn and may read them as well.
      */
     public Color getFillColor() { return new Color(255, 255, 255); }
 
@@ -81,7 +205,10 @@ public class Cell
      * Called when {@link Grid#randomize()} is called. randomization
      * in customizeable
      * @param rand a object of the {@link Random} class used in the
-     *             method
+     *             method, seeded from {@link Initializer#setSeed(long)}
+     *             and shared by the cells of one tile of the grid; the
+     *             tiles are randomized on several threads at once,
+     *             each with its own instance of the cell class
      */
     public void randomizeState(Random rand) {}
 }
@@ -5,6 +5,12 @@ import processing.core.PVector;
 import processing.event.MouseEvent;
 
 import java.awt.*;
+import java.io.IOException;
+import java.io.UncheckedIOException;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+
+import static io.github.keheck.Settings.*;
 
 /**
  * This is the class that should be called from the outside
@@ -12,20 +18,45 @@ import java.awt.*;
  * To get the API running:
  * - call any combionation of these methods:
  *   - {@link Initializer#setClass(Class)}
+ *   - {@link Initializer#setCellFactory(java.util.function.Supplier)}
  *   - {@link Initializer#setRandom(boolean)}
+ *   - {@link Initializer#setSeed(long)}
+ *   - {@link Initializer#setDensity(double)}
+ *   - {@link Initializer#setDistribution(double...)}
  *   - {@link Initializer#setTickLength(int)}
  *   - {@link Initializer#setGridHeight(int)}
  *   - {@link Initializer#setGridWidth(int)}
  *   - {@link Initializer#setCellSize(int)}
  *   - {@link Initializer#setBgColor(Color)}
+ *   - {@link Initializer#setThreads(int)}
+ *   - {@link Initializer#setTileSize(int)}
+ *   - {@link Initializer#setChangeTracking(boolean)}
+ *   - {@link Initializer#setEngine(Engine)}
+ *   - {@link Initializer#setHashLifeStep(int)}
+ *   - {@link Initializer#setHashLifeNodes(int)}
+ *   - {@link Initializer#setNeighbourhood(NeighbourhoodShape)}
+ *   - {@link Initializer#setBoundary(Boundary)}
+ *   - {@link Initializer#setBoundaryState(int)}
+ *   - {@link Initializer#setDownsampling(Downsampling)}
+ *   - {@link Initializer#setOffHeap(boolean)}
+ *   - {@link Initializer#setInitialState(Path)}
+ *   - {@link Initializer#setRecording(Path)}
+ *   - {@link Initializer#setKeyframeInterval(int)}
+ *   - {@link Initializer#setMetrics(boolean)}
+ *   - {@link Initializer#addMetricsListener(MetricsListener)}
+ *   - {@link Initializer#setCycleDetection(int)}
  * * NOTE 1: since the set-methods return {@link Initializer#INSTANCE}, you can chain them.
  * * NOTE 2: you can omit calling some of the methods; the according fields have a default value
- * - if there is an error coming from {@link Grid#Grid(int, int, int, Class)}, look at the
+ * - call {@link Initializer#finish()} to open the window, or use
+ *   {@link Simulation#run(Class, int, int, long)} to step the grid without one
+ * - if there is an error coming from {@link Grid#Grid(int, int, Class)}, look at the
  *   message: what does it say? adjust your code accordingly
  *
  * How to setup the class inheriting cell:
  *   - extend the class {@link Cell}
  *   - override any methods you want to override
+ *     - NOTE: overriding {@link Cell#changeState(Neighbourhood)} instead of
+ *       {@link Cell#changeState(Cell[])} saves building an array for every cell
  *     - NOTE: the methods
  *       <ul>
  *           <li>{@link Cell#cycleState()}</li>
@@ -39,11 +70,19 @@ import java.awt.*;
  *   - 0: stop the simulation
  *   - 1: take a step every tick
  *   - 2: take a step everytime you hit enter
+ *   - 3: step as fast as possible, only the latest generation is drawn
+ * - the grid is stepped on its own thread (see {@link SimulationLoop}), so a slow
+ *   generation doesn't freeze the window
  * - cycle the state of every cell:
  *   - right-click on any cell to cycle through it's states
  *   - if you hold right-click, any cell that you hover over will cycle thier state
  *     - if you go out of bounds, the cell at (0|0) will cycle it's state
  *   - you need to poition the cam at (0|0) and scale 1 to edit cells (hit 'r')
+ * - save the grid by hitting 'w' (see {@link Initializer#setInitialState(Path)} to load it again)
+ * - export the grid as an RLE pattern by hitting 'e'
+ * - show how fast the grid is stepped and drawn by hitting 'm' (see {@link Metrics}), and
+ *   whether it repeats itself (see {@link Initializer#setCycleDetection(int)})
+ * - move the part of an unbounded grid that is shown with the arrow keys (see {@link Engine#CHUNKED})
  */
 
 public final class CellularAutomatonAPI extends PApplet
@@ -53,26 +92,42 @@ public final class CellularAutomatonAPI extends PApplet
     static Camera cam = new Camera();
     static CellularAutomatonAPI instance;
     private static Grid grid;
-    static Class<? extends Cell> clazz = ExampleCell.class;
-    static int tickLength = 100;
-    static int gridHeight = 50;
-    static int gridWidth = 50;
-    static int cellSize = 15;
-    static Color bgColor = new Color(100, 100, 100);
-    private int lastMillis;
+    private static GridRenderer renderer;
+    private static SimulationLoop loop;
+    private static Recorder recorder;
+    private static Metrics metrics;
+    private static CycleDetector cycles;
+    private PVector lastCell;
     //0 = stopped
     //1 = tick wise
     //2 = step wise (press enter to move forward)
+    //3 = max speed (only the latest generation is drawn)
     private int simMode = 0;
     boolean withStroke = true;
-    static boolean isRunning = false;
-    static boolean random = true;
+    private boolean showMetrics = false;
 
     @Override
     public void settings()
     {
         instance = this;
+
+        //a pattern is put into the grid as big as it is set, a saved grid brings its own size
+        if(initialState != null && !PatternFile.isPattern(initialState))
+        {
+            try
+            {
+                GridFile.Header header = GridFile.Header.read(initialState);
+                gridWidth = header.width;
+                gridHeight = header.height;
+            } catch (IOException e)
+            {
+                throw new UncheckedIOException(e);
+            }
+        }
+
         size(gridWidth*cellSize+20, gridHeight*cellSize+20);
+        //the cells are drawn as one scaled image, smoothing would blur them
+        noSmooth();
     }
 
     /**
@@ -89,46 +144,125 @@ public final class CellularAutomatonAPI extends PApplet
     {
         height = super.height;
         width = super.width;
-        grid = new Grid(gridWidth, gridHeight, cellSize, clazz);
+        grid = new Grid(gridWidth, gridHeight, cellFactory != null ? cellFactory : Grid.factory(clazz));
+        renderer = new GridRenderer(grid, cellSize);
 
-        if(random)
+        if(initialState != null)
+        {
+            try
+            {
+                if(PatternFile.isPattern(initialState))
+                    PatternFile.load(grid, initialState);
+                else
+                    GridFile.load(grid, initialState);
+            } catch (IOException e)
+            {
+                throw new UncheckedIOException(e);
+            }
+        }
+        else if(random)
             grid.randomize();
 
-        lastMillis = millis();
+        if(recording != null)
+        {
+            try
+            {
+                recorder = new Recorder(grid, recording, keyframeInterval);
+                grid.setRecorder(recorder);
+            } catch (IOException e)
+            {
+                throw new UncheckedIOException(e);
+            }
+        }
+
+        metrics = Metrics.attach(grid);
+        cycles = CycleDetector.attach(grid);
+        loop = new SimulationLoop(grid, tickLength);
+        loop.start();
         surface.setResizable(true);
     }
 
+    @Override
+    public void dispose()
+    {
+        if(loop != null)
+            loop.stop();
+
+        if(recorder != null)
+        {
+            try
+            {
+                recorder.close();
+            } catch (IOException e)
+            {
+                System.err.println("Couldn't finish the recording " + recording.toAbsolutePath());
+                e.printStackTrace();
+            }
+        }
+
+        super.dispose();
+    }
+
     @Override
     public void draw()
     {
-        if(height != super.height)
-            height = super.height;
-        if(width != super.width)
-            width = super.width;
-
-        instance.translate((float)(width/2), (float)(height/2));
-        instance.scale((float)cam.scale);
-        instance.translate(-(float)(width/2), -(float)(height/2));
-        instance.translate(cam.pos.x, cam.pos.y);
-
-        background(bgColor.getRGB());
-        grid.show();
+        boolean resized = height != super.height || width != super.width;
+
+        height = super.height;
+        width = super.width;
         cam.update();
-        translate(-cam.pos.x, -cam.pos.y);
-        //fill(new Color(103, 96, 0).getRGB());
-        //rect(0, 0, cellSize, cellSize);
 
-        if(lastMillis < millis() - tickLength && simMode == 1)
+        Snapshot frame = loop.acquire();
+
+        //the last frame stays on the screen, so it's only drawn again when something changed
+        //(or the numbers on the overlay might have)
+        if(resized || showMetrics || renderer.needsRepaint(frame))
         {
-            grid.update();
-            lastMillis = millis();
+            instance.translate((float)(width/2), (float)(height/2));
+            instance.scale((float)cam.scale);
+            instance.translate(-(float)(width/2), -(float)(height/2));
+            instance.translate(cam.pos.x, cam.pos.y);
+
+            background(bgColor.getRGB());
+
+            long start = metrics != null ? System.nanoTime() : 0;
+            renderer.show(frame);
+
+            if(metrics != null)
+                metrics.rendered(System.nanoTime() - start);
+            if(showMetrics)
+                showMetrics();
         }
+        //fill(new Color(103, 96, 0).getRGB());
+        //rect(0, 0, cellSize, cellSize);
 
         //used to test the camera feature
         //fill(255, 0, 0);
         //rect(0, 0, 25, 25);
     }
 
+    /**
+     * draws the numbers of the {@link Metrics} (and the cycle the grid is in) in the top left corner of the window
+     */
+    private void showMetrics()
+    {
+        String text = cycles != null ? metrics + "\n" + cycles : metrics.toString();
+        String[] lines = text.split("\n");
+        float textWidth = 0;
+
+        resetMatrix();
+        textSize(12);
+
+        for(String line : lines)
+            textWidth = Math.max(textWidth, textWidth(line));
+
+        noStroke();
+        fill(0, 160);
+        rect(5, 5, textWidth + 10, lines.length*(textAscent() + textDescent())*1.25f + 10);
+        fill(255);
+        text(text, 10, 10 + textAscent());
+    }
+
     /**
      * is used to zoom up and down
      */
@@ -146,10 +280,7 @@ public final class CellularAutomatonAPI extends PApplet
     {
         if(event.getButton() == LEFT)
             cam.enable();
-        /*Cell selected = grid.getCellAtPrevSafe(grid.getBoardCoords(new Point(event.getX(), event.getY())));
-
-        if(selected != null)
-            selected.cycleState();*/
+        /*cycleStateAtPrevSafe(renderer.getBoardCoords(new Point(event.getX(), event.getY())));*/
     }
 
     @Override
@@ -157,9 +288,7 @@ public final class CellularAutomatonAPI extends PApplet
     {
         if(event.getButton() == RIGHT)
         {
-            Cell cell = grid.getCellAtPrevSafe(grid.getBoardCoords(new Point(event.getX(), event.getY())));
-            if(cell != null)
-                cell.cycleState();
+            cycleStateAtPrevSafe(renderer.getBoardCoords(new Point(event.getX(), event.getY())));
         }
     }
 
@@ -170,20 +299,64 @@ public final class CellularAutomatonAPI extends PApplet
             cam.disable();
         if(event.getButton() == RIGHT)
         {
-            Cell cell = grid.getCellAtPrevSafe(grid.getBoardCoords(new Point(event.getX(), event.getY())));
-            if(cell != null)
-                cell.cycleState();
+            cycleStateAtPrevSafe(renderer.getBoardCoords(new Point(event.getX(), event.getY())));
+
+            lastCell = null;
+        }
+    }
+    /**
+     * saves the grid to the working directory, runs on the simulation thread
+     * @param extension ".grid" for a saved grid, or the extension of a pattern format (see {@link PatternFile})
+     */
+    private void saveGrid(String extension)
+    {
+        Path path = Paths.get("generation-" + grid.getGeneration() + extension);
+
+        try
+        {
+            if(PatternFile.isPattern(path))
+                PatternFile.save(grid, path);
+            else
+                GridFile.save(grid, path);
 
-            grid.lastCell = null;
+            System.out.println("Saved the grid to " + path.toAbsolutePath());
+        } catch (IOException | IllegalArgumentException e)
+        {
+            System.err.println("Couldn't save the grid to " + path.toAbsolutePath());
+            e.printStackTrace();
         }
     }
+
+    /**
+     * cycles the state of the cell at the given coordinates (see {@link Cell#cycleState()}),
+     * unless it was the last cell cycled
+     * @param coords the board coordinates (see {@link GridRenderer#getBoardCoords(Point)})
+     */
+    private void cycleStateAtPrevSafe(PVector coords)
+    {
+        if(coords.equals(lastCell))
+            return;
+
+        lastCell = coords;
+
+        if(coords.x < 0 || coords.y < 0 || coords.x >= gridWidth || coords.y >= gridHeight)
+            loop.post(() -> grid.cycleState(0, 0));
+        else
+            loop.post(() -> grid.cycleState((int)coords.x, (int)coords.y));
+    }
+
     /**
      * when r pressed: resets the scale and position of the camera (needed to set cells)
      * when 0 pressed: sets the simMode to 0
      * when 1 pressed: sets the simMode to 1
      * when 2 pressed: sets the simMode to 2
+     * when 3 pressed: sets the simMode to 3
      * when enter pressed: simulates one step, when simMode == 2
      * when s pressed: switches strokes on/off
+     * when w pressed: saves the grid to generation-[generation].grid
+     * when e pressed: exports the grid as a pattern to generation-[generation].rle
+     * when m pressed: shows/hides the metrics
+     * when an arrow key pressed: moves an unbounded grid by a quarter of its size
      */
     @Override
     public void keyPressed()
@@ -193,17 +366,40 @@ public final class CellularAutomatonAPI extends PApplet
             cam.scale = 1;
             cam.pos = new PVector(0, 0);
         }
-        else if(key == '0')
-            simMode = 0;
-        else if(key == '1')
-            simMode = 1;
-        else if(key == '2')
-            simMode = 2;
+        else if(key >= '0' && key <= '3')
+        {
+            simMode = key - '0';
+            loop.setMode(simMode);
+        }
         else if(keyCode == 10 && simMode == 2)
-            grid.update();
+            loop.step();
         else if(key == 's')
             withStroke = !withStroke;
         else if(key == ' ')
-            grid.resetGrid();
+            loop.post(grid::resetGrid);
+        else if(key == 'w')
+            loop.post(() -> saveGrid(".grid"));
+        else if(key == 'e')
+            loop.post(() -> saveGrid(".rle"));
+        else if(key == 'm')
+        {
+            //the overlay measures the grid from now on, even if the metrics weren't turned on
+            if(metrics == null)
+            {
+                Metrics measuring = new Metrics(grid);
+                metrics = measuring;
+                loop.post(() -> grid.setMetrics(measuring));
+            }
+
+            showMetrics = !showMetrics;
+        }
+        else if(key == CODED && grid.isUnbounded())
+        {
+            int dx = keyCode == LEFT ? -Math.max(1, gridWidth/4) : keyCode == RIGHT ? Math.max(1, gridWidth/4) : 0;
+            int dy = keyCode == UP ? -Math.max(1, gridHeight/4) : keyCode == DOWN ? Math.max(1, gridHeight/4) : 0;
+
+            if(dx != 0 || dy != 0)
+                loop.post(() -> grid.moveView(dx, dy));
+        }
     }
 }
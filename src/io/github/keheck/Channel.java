@@ -0,0 +1,64 @@
+package io.github.keheck;
+
+/**
+ * An extra value every cell keeps besides its state, like its age, energy or direction.
+ * Since a single {@link Cell} instance is used for every cell, fields of a subclass can't
+ * hold them; a cell class declares its channels in {@link Cell#getChannels()} instead and
+ * reads and writes them through {@link Cell#getInt(Channel)} and the like:
+ * <pre>
+ * static final Channel AGE = Channel.ofInt("age");
+ *
+ * public Channel[] getChannels() { return new Channel[] {AGE}; }
+ *
+ * public void changeState(Neighbourhood neighbours)
+ * {
+ *     ...
+ *     setInt(AGE, getState() != 0 ? getInt(AGE)+1 : 0);
+ * }
+ * </pre>
+ *
+ * The {@link Grid} keeps every channel in an array of its own, laid out just like the states,
+ * and swaps it with the states after every generation. A channel holds ints, floats or bytes;
+ * a new grid starts with all of them at 0.
+ */
+
+public final class Channel
+{
+    private final String name;
+    //int.class, float.class or byte.class
+    private final Class<?> type;
+
+    private Channel(String name, Class<?> type)
+    {
+        if(name == null)
+            throw new IllegalArgumentException("A channel needs a name");
+
+        this.name = name;
+        this.type = type;
+    }
+
+    /**
+     * @return a channel holding an int for every cell
+     */
+    public static Channel ofInt(String name) { return new Channel(name, int.class); }
+
+    /**
+     * @return a channel holding a float for every cell
+     */
+    public static Channel ofFloat(String name) { return new Channel(name, float.class); }
+
+    /**
+     * @return a channel holding a byte for every cell
+     */
+    public static Channel ofByte(String name) { return new Channel(name, byte.class); }
+
+    public String getName() { return name; }
+
+    /**
+     * @return {@code int.class}, {@code float.class} or {@code byte.class}
+     */
+    public Class<?> getType() { return type; }
+
+    @Override
+    public String toString() { return name + " (" + type + ")"; }
+}
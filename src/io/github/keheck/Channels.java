@@ -0,0 +1,142 @@
+package io.github.keheck;
+
+import java.util.Arrays;
+
+/**
+ * The values of the {@link Channel}s of one generation, one primitive array per channel
+ * (structure of arrays), so stepping a row reads each of them one after the other.
+ * A {@link Grid} keeps two of them, laid out like its {@link StateBuffer}s, and swaps
+ * them together; a {@link Snapshot} keeps one without the halo.
+ */
+
+final class Channels
+{
+    private final Channel[] channels;
+    //ints[i] is the array of channel i if it holds ints, otherwise null (same for the others)
+    private final int[][] ints;
+    private final float[][] floats;
+    private final byte[][] bytes;
+
+    /**
+     * @param channels the channels declared by the cell, see {@link #check(Channel[])}
+     * @param size the number of cells
+     */
+    Channels(Channel[] channels, int size)
+    {
+        this.channels = channels;
+        this.ints = new int[channels.length][];
+        this.floats = new float[channels.length][];
+        this.bytes = new byte[channels.length][];
+
+        for(int i = 0; i < channels.length; i++)
+        {
+            if(channels[i].getType() == int.class)
+                ints[i] = new int[size];
+            else if(channels[i].getType() == float.class)
+                floats[i] = new float[size];
+            else
+                bytes[i] = new byte[size];
+        }
+    }
+
+    /**
+     * @param channels what {@link Cell#getChannels()} returned
+     * @throws IllegalArgumentException if a channel is missing or declared twice
+     */
+    static void check(Channel[] channels)
+    {
+        if(channels == null)
+            throw new IllegalArgumentException("Cells without channels have to declare an empty array");
+
+        for(int i = 0; i < channels.length; i++)
+        {
+            if(channels[i] == null)
+                throw new IllegalArgumentException("Channel " + i + " is null");
+
+            for(int j = 0; j < i; j++)
+                if(channels[j] == channels[i])
+                    throw new IllegalArgumentException("Channel " + channels[i] + " is declared twice");
+        }
+    }
+
+    Channel[] getChannels() { return channels; }
+
+    int getInt(Channel channel, int index) { return ints[slot(channel, int.class)][index]; }
+
+    void setInt(Channel channel, int index, int value) { ints[slot(channel, int.class)][index] = value; }
+
+    float getFloat(Channel channel, int index) { return floats[slot(channel, float.class)][index]; }
+
+    void setFloat(Channel channel, int index, float value) { floats[slot(channel, float.class)][index] = value; }
+
+    byte getByte(Channel channel, int index) { return bytes[slot(channel, byte.class)][index]; }
+
+    void setByte(Channel channel, int index, byte value) { bytes[slot(channel, byte.class)][index] = value; }
+
+    /**
+     * copies the values of a cell to another one, e.g. into the halo
+     * @param from the cell to copy, or -1 to set every channel of the other one to 0
+     */
+    void copy(int from, int to)
+    {
+        for(int i = 0; i < channels.length; i++)
+        {
+            if(ints[i] != null)
+                ints[i][to] = from < 0 ? 0 : ints[i][from];
+            else if(floats[i] != null)
+                floats[i][to] = from < 0 ? 0 : floats[i][from];
+            else
+                bytes[i][to] = from < 0 ? 0 : bytes[i][from];
+        }
+    }
+
+    /**
+     * copies the values of {@code length} cells from {@code from} on into another instance for the same channels
+     */
+    void copy(int from, Channels into, int to, int length)
+    {
+        for(int i = 0; i < channels.length; i++)
+        {
+            if(ints[i] != null)
+                System.arraycopy(ints[i], from, into.ints[i], to, length);
+            else if(floats[i] != null)
+                System.arraycopy(floats[i], from, into.floats[i], to, length);
+            else
+                System.arraycopy(bytes[i], from, into.bytes[i], to, length);
+        }
+    }
+
+    /**
+     * sets every value of every channel to 0
+     */
+    void clear()
+    {
+        for(int i = 0; i < channels.length; i++)
+        {
+            if(ints[i] != null)
+                Arrays.fill(ints[i], 0);
+            else if(floats[i] != null)
+                Arrays.fill(floats[i], 0);
+            else
+                Arrays.fill(bytes[i], (byte)0);
+        }
+    }
+
+    /**
+     * @return the index of the channel, there are only a few so they are searched one after the other
+     */
+    private int slot(Channel channel, Class<?> type)
+    {
+        for(int i = 0; i < channels.length; i++)
+        {
+            if(channels[i] != channel)
+                continue;
+            if(channel.getType() != type)
+                throw new IllegalArgumentException("Channel " + channel + " doesn't hold values of type " + type);
+
+            return i;
+        }
+
+        throw new IllegalArgumentException("Channel " + channel + " isn't declared by the cell");
+    }
+}
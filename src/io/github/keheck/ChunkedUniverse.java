@@ -0,0 +1,488 @@
+package io.github.keheck;
+
+import java.util.ArrayDeque;
+import java.util.Arrays;
+
+/**
+ * An unbounded universe for any {@link Rule}, made of chunks of {@link #CHUNK} x {@link #CHUNK}
+ * cells (see {@link Engine#CHUNKED}). A chunk is only allocated once one of its cells leaves
+ * state 0 and is dropped as soon as all of them are back in state 0, so the memory grows with
+ * the area that is alive instead of with the size of the universe.
+ *
+ * Only the chunks that changed in the last generation are stepped again, together with the
+ * chunks next to the edges the changes reached (as far as the neighbourhood reaches); all
+ * the others would stay the same anyway, so e.g. an oscillator only keeps its own chunk busy. To step a chunk, it is copied together with the
+ * edges of its neighbours into a buffer with a halo, laid out like the buffers of the
+ * {@link Grid}, and the rule is applied to that.
+ *
+ * The chunks are kept in a hash table keyed by their position, like the nodes of
+ * {@link HashLife}, so finding one doesn't allocate.
+ */
+
+final class ChunkedUniverse
+{
+    static final int SHIFT = 6;
+    static final int CHUNK = 1 << SHIFT;
+    //the edges of a chunk that changes reached, see Chunk#edges
+    private static final int LEFT = 1;
+    private static final int RIGHT = 2;
+    private static final int TOP = 4;
+    private static final int BOTTOM = 8;
+    private static final int CHANGED = 16;
+    //how many buffers of dropped chunks are kept for new ones
+    private static final int SPARE = 64;
+
+    private final Rule rule;
+    private final int states;
+    private final int halo;
+    private final int stride;
+    private final int origin;
+    private final int[] deltas;
+    //a chunk with the edges of its neighbours, before and after a step
+    private final StateBuffer from;
+    private final StateBuffer to;
+    private final StateBuffer zeros;
+    private final ArrayDeque<StateBuffer> spare = new ArrayDeque<>();
+    private Chunk[] buckets = new Chunk[1 << 8];
+    private int count;
+    //the chunks stepped in the current generation
+    private Chunk[] stepped = new Chunk[64];
+    private int steppedCount;
+    //the hash of all cells (see CycleDetector), only kept up to date once it was asked for
+    private long hash;
+    private boolean hashing;
+
+    /**
+     * @param rule the rule the universe follows, state 0 surrounded by state 0 has to stay 0
+     */
+    ChunkedUniverse(Rule rule)
+    {
+        this.rule = rule;
+        this.states = rule.getStates();
+        this.halo = rule.getShape().getRadius();
+
+        if(halo > CHUNK)
+            throw new IllegalArgumentException("The " + Engine.CHUNKED + " engine only supports neighbourhoods up to a radius of " + CHUNK);
+
+        this.stride = CHUNK + 2*halo;
+        this.origin = halo*stride + halo;
+        this.deltas = rule.getShape().deltas(stride);
+        this.from = StateBuffer.create(stride*stride, states);
+        this.to = StateBuffer.create(stride*stride, states);
+        this.zeros = StateBuffer.create(stride*stride, states);
+
+        //otherwise the empty part of the universe would come alive, which never ends
+        if(rule.step(from, to, origin, stride, deltas, 0, CHUNK, 0, CHUNK))
+            throw new IllegalArgumentException("The " + Engine.CHUNKED + " engine needs a rule that keeps " +
+                                               "cells in state 0 surrounded by state 0 in state 0");
+    }
+
+    /**
+     * @return how many cells aren't in state 0
+     */
+    long getPopulation()
+    {
+        long population = 0;
+
+        for(Chunk bucket : buckets)
+            for(Chunk chunk = bucket; chunk != null; chunk = chunk.nextInBucket)
+                for(int cell = 0; cell < CHUNK*CHUNK; cell++)
+                    if(chunk.states.get(cell) != 0)
+                        population++;
+
+        return population;
+    }
+
+    /**
+     * The hash of all cells, see {@link CycleDetector}. The first call looks at every
+     * chunk, after that only the cells that change are looked at.
+     */
+    long getHash()
+    {
+        if(!hashing)
+        {
+            hash = 0;
+
+            for(Chunk bucket : buckets)
+                for(Chunk chunk = bucket; chunk != null; chunk = chunk.nextInBucket)
+                    if(chunk.states != null)
+                        for(int cell = 0; cell < CHUNK*CHUNK; cell++)
+                            hash ^= key(chunk, cell, chunk.states.get(cell));
+
+            hashing = true;
+        }
+
+        return hash;
+    }
+
+    /**
+     * @return the key of the cell of the chunk at the given index of its states
+     */
+    private static long key(Chunk chunk, int cell, int state)
+    {
+        return CycleDetector.key(((long)chunk.x << SHIFT) + (cell & CHUNK-1), ((long)chunk.y << SHIFT) + (cell >> SHIFT), state);
+    }
+
+    /**
+     * @return how many chunks are allocated
+     */
+    int getChunks() { return count; }
+
+    /**
+     * @return the state of the cell at (x|y)
+     */
+    int get(int x, int y)
+    {
+        Chunk chunk = find(x >> SHIFT, y >> SHIFT);
+        return chunk != null ? chunk.states.get(local(x, y)) : 0;
+    }
+
+    /**
+     * sets the state of the cell at (x|y), which is stepped in the next generation
+     * (a chunk that ends up empty is only dropped then)
+     */
+    void set(int x, int y, int state)
+    {
+        Chunk chunk = find(x >> SHIFT, y >> SHIFT);
+
+        if(chunk == null)
+        {
+            if(state == 0)
+                return;
+
+            chunk = add(x >> SHIFT, y >> SHIFT);
+            chunk.states = buffer();
+        }
+
+        int index = local(x, y);
+        int previous = chunk.states.get(index);
+
+        if(previous == state)
+            return;
+
+        chunk.states.set(index, state);
+        chunk.edges |= edges(x & CHUNK-1, y & CHUNK-1);
+
+        if(hashing)
+            hash ^= key(chunk, index, previous) ^ key(chunk, index, state);
+    }
+
+    /**
+     * drops every chunk
+     */
+    void clear()
+    {
+        Arrays.fill(buckets, null);
+        count = 0;
+        hash = 0;
+    }
+
+    /**
+     * copies the cells shown by a grid into the universe, the cells outside of it stay
+     * @param viewX the x coordinate of the cell shown at (0|0)
+     * @param viewY the y coordinate of the cell shown at (0|0)
+     */
+    void load(StateBuffer states, int width, int height, int origin, int stride, int viewX, int viewY)
+    {
+        for(int y = 0; y < height; y++)
+            for(int x = 0; x < width; x++)
+                set(viewX + x, viewY + y, states.get(origin + y*stride + x));
+    }
+
+    /**
+     * copies the cells shown by a grid out of the universe
+     * @param viewX the x coordinate of the cell shown at (0|0)
+     * @param viewY the y coordinate of the cell shown at (0|0)
+     */
+    void store(StateBuffer states, int width, int height, int origin, int stride, int viewX, int viewY)
+    {
+        //one lookup per chunk instead of one per cell
+        for(int y = 0; y < height; )
+        {
+            int chunkY = (viewY + y) >> SHIFT;
+            int toY = Math.min(height, (chunkY+1 << SHIFT) - viewY);
+
+            for(int x = 0; x < width; )
+            {
+                int chunkX = (viewX + x) >> SHIFT;
+                int toX = Math.min(width, (chunkX+1 << SHIFT) - viewX);
+                Chunk chunk = find(chunkX, chunkY);
+
+                for(int row = y; row < toY; row++)
+                {
+                    if(chunk != null)
+                        chunk.states.copy(local(viewX + x, viewY + row), states, origin + row*stride + x, toX-x);
+                    else
+                        zeros.copy(0, states, origin + row*stride + x, toX-x);
+                }
+
+                x = toX;
+            }
+
+            y = toY;
+        }
+    }
+
+    /**
+     * steps one generation
+     * @return how many cells were evaluated
+     */
+    int step()
+    {
+        steppedCount = 0;
+
+        //the chunks that changed, the chunks around them are added behind them
+        for(Chunk bucket : buckets)
+            for(Chunk chunk = bucket; chunk != null; chunk = chunk.nextInBucket)
+                if(chunk.edges != 0)
+                    stepped(chunk);
+
+        int changed = steppedCount;
+
+        for(int i = 0; i < changed; i++)
+        {
+            Chunk chunk = stepped[i];
+
+            for(int dy = -1; dy <= 1; dy++)
+            {
+                for(int dx = -1; dx <= 1; dx++)
+                {
+                    //the change has to reach every edge towards the chunk
+                    int towards = (dx < 0 ? LEFT : dx > 0 ? RIGHT : 0) | (dy < 0 ? TOP : dy > 0 ? BOTTOM : 0);
+
+                    if((chunk.edges & towards) != towards)
+                        continue;
+
+                    Chunk around = find(chunk.x+dx, chunk.y+dy);
+
+                    //an empty chunk is only kept if something comes alive in it
+                    if(around == null)
+                        around = add(chunk.x+dx, chunk.y+dy);
+                    if(!around.stepped)
+                        stepped(around);
+                }
+            }
+        }
+
+        for(int i = 0; i < steppedCount; i++)
+            step(stepped[i]);
+
+        for(int i = 0; i < steppedCount; i++)
+        {
+            Chunk chunk = stepped[i];
+            stepped[i] = null;
+            chunk.stepped = false;
+
+            chunk.edges = chunk.nextEdges;
+
+            if(chunk.edges != 0)
+            {
+                StateBuffer previous = chunk.states;
+                chunk.states = chunk.next;
+                chunk.next = previous;
+            }
+
+            if(chunk.empty)
+                remove(chunk);
+        }
+
+        return steppedCount * CHUNK*CHUNK;
+    }
+
+    private void stepped(Chunk chunk)
+    {
+        if(steppedCount == stepped.length)
+            stepped = Arrays.copyOf(stepped, steppedCount*2);
+
+        chunk.stepped = true;
+        stepped[steppedCount++] = chunk;
+    }
+
+    /**
+     * writes the next generation of the chunk into {@link Chunk#next} if it changes
+     */
+    private void step(Chunk chunk)
+    {
+        gather(chunk);
+        chunk.nextEdges = 0;
+        chunk.empty = true;
+
+        boolean changed = rule.step(from, to, origin, stride, deltas, 0, CHUNK, 0, CHUNK);
+
+        if(changed && chunk.next == null)
+            chunk.next = buffer();
+
+        for(int y = 0; y < CHUNK; y++)
+        {
+            int row = origin + y*stride;
+
+            if(chunk.empty && to.mismatch(zeros, row, row+CHUNK) < row+CHUNK)
+                chunk.empty = false;
+            if(!changed)
+                continue;
+
+            to.copy(row, chunk.next, y*CHUNK, CHUNK);
+
+            int first = to.mismatch(from, row, row+CHUNK) - row;
+
+            if(hashing)
+                for(int x = first; x < CHUNK; x = to.mismatch(from, row+x+1, row+CHUNK) - row)
+                    hash ^= key(chunk, y*CHUNK + x, from.get(row+x)) ^ key(chunk, y*CHUNK + x, to.get(row+x));
+
+            //the edges only need the first change and a change close to the right
+            if(first < CHUNK)
+                chunk.nextEdges |= edges(first, y) |
+                                   (to.mismatch(from, row + Math.max(first, CHUNK-halo), row+CHUNK) < row+CHUNK ? RIGHT : 0);
+        }
+    }
+
+    /**
+     * copies the chunk and the edges of the chunks around it into {@link #from}
+     */
+    private void gather(Chunk chunk)
+    {
+        from.fill(0);
+
+        for(int dy = -1; dy <= 1; dy++)
+        {
+            for(int dx = -1; dx <= 1; dx++)
+            {
+                Chunk around = dx == 0 && dy == 0 ? chunk : find(chunk.x+dx, chunk.y+dy);
+
+                if(around == null || around.states == null)
+                    continue;
+
+                //the part of the chunk within the halo, in its own coordinates
+                int fromX = dx < 0 ? CHUNK-halo : 0;
+                int toX = dx > 0 ? halo : CHUNK;
+                int fromY = dy < 0 ? CHUNK-halo : 0;
+                int toY = dy > 0 ? halo : CHUNK;
+
+                for(int y = fromY; y < toY; y++)
+                    around.states.copy(y*CHUNK + fromX, from, origin + (y + dy*CHUNK)*stride + dx*CHUNK + fromX, toX-fromX);
+            }
+        }
+    }
+
+    private StateBuffer buffer()
+    {
+        StateBuffer buffer = spare.poll();
+
+        if(buffer == null)
+            return StateBuffer.create(CHUNK*CHUNK, states);
+
+        buffer.fill(0);
+        return buffer;
+    }
+
+    /**
+     * @return the edges within the reach of the neighbourhood of the cell at (x|y) in its chunk,
+     *         and {@link #CHANGED}
+     */
+    private int edges(int x, int y)
+    {
+        return (x < halo ? LEFT : 0) | (x >= CHUNK-halo ? RIGHT : 0) |
+               (y < halo ? TOP : 0) | (y >= CHUNK-halo ? BOTTOM : 0) | CHANGED;
+    }
+
+    private static int local(int x, int y) { return (y & CHUNK-1)*CHUNK + (x & CHUNK-1); }
+
+    private int bucket(int x, int y)
+    {
+        int hash = x*0x9E3779B9 ^ y*0x85EBCA6B;
+        return (hash ^ hash >>> 16) & buckets.length-1;
+    }
+
+    private Chunk find(int x, int y)
+    {
+        for(Chunk chunk = buckets[bucket(x, y)]; chunk != null; chunk = chunk.nextInBucket)
+            if(chunk.x == x && chunk.y == y)
+                return chunk;
+
+        return null;
+    }
+
+    /**
+     * adds an empty chunk without buffers
+     */
+    private Chunk add(int x, int y)
+    {
+        if(count >= buckets.length*3/4)
+        {
+            Chunk[] old = buckets;
+            buckets = new Chunk[old.length*2];
+
+            for(Chunk bucket : old)
+            {
+                for(Chunk chunk = bucket; chunk != null; )
+                {
+                    Chunk next = chunk.nextInBucket;
+                    int index = bucket(chunk.x, chunk.y);
+                    chunk.nextInBucket = buckets[index];
+                    buckets[index] = chunk;
+                    chunk = next;
+                }
+            }
+        }
+
+        Chunk chunk = new Chunk(x, y);
+        int index = bucket(x, y);
+        chunk.nextInBucket = buckets[index];
+        buckets[index] = chunk;
+        count++;
+        return chunk;
+    }
+
+    private void remove(Chunk chunk)
+    {
+        int index = bucket(chunk.x, chunk.y);
+
+        if(buckets[index] == chunk)
+            buckets[index] = chunk.nextInBucket;
+        else
+        {
+            Chunk previous = buckets[index];
+
+            while(previous.nextInBucket != chunk)
+                previous = previous.nextInBucket;
+
+            previous.nextInBucket = chunk.nextInBucket;
+        }
+
+        count--;
+        recycle(chunk.states);
+        recycle(chunk.next);
+    }
+
+    private void recycle(StateBuffer buffer)
+    {
+        if(buffer != null && spare.size() < SPARE)
+            spare.add(buffer);
+    }
+
+    /**
+     * {@link #CHUNK} x {@link #CHUNK} cells, row by row
+     */
+    private static final class Chunk
+    {
+        private final int x;
+        private final int y;
+        private Chunk nextInBucket;
+        //null while the chunk is empty
+        private StateBuffer states;
+        private StateBuffer next;
+        //whether all cells are in state 0 after the last step
+        private boolean empty;
+        //0 if the chunk didn't change in the last generation, otherwise the edges the changes reached
+        //and CHANGED
+        private int edges;
+        private int nextEdges;
+        private boolean stepped;
+
+        Chunk(int x, int y)
+        {
+            this.x = x;
+            this.y = y;
+        }
+    }
+}
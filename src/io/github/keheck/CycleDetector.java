@@ -0,0 +1,200 @@
+package io.github.keheck;
+
+import java.util.Arrays;
+
+/**
+ * Finds out when a grid stops changing or starts repeating itself (see
+ * {@link Initializer#setCycleDetection(int)}), so a {@link Simulation} doesn't have to
+ * step it any further.
+ *
+ * Every generation is boiled down to a 64 bit hash: every cell that isn't in state 0
+ * has a random looking {@link #key(long, long, int)} for its position and state, and the
+ * hash of a generation is all keys XORed together (Zobrist hashing). Because of that, the
+ * grid doesn't have to look at every cell to keep the hash up to date, only at the ones
+ * that changed (see {@link Grid#getHash()}).
+ *
+ * The hashes of the last {@link #history} generations are kept in a hash table. As soon as
+ * a generation has the same hash as one of them, the grid is in a cycle: a period of 1 means
+ * it doesn't change anymore, a longer one that it oscillates. Two different generations
+ * sharing a hash is possible, but with 64 bits it's unlikely enough to be ignored.
+ *
+ * The grid only passes on the generations it stops at. With {@link Engine#HASHLIFE} that's
+ * every {@link Grid#getGenerationsPerUpdate()}th one, so the period and the start are multiples
+ * of it (a still life has a period of 2^k).
+ */
+
+final class CycleDetector
+{
+    private final int history;
+    //the hashes and generations of the last generations, in the order they were recorded
+    private final long[] hashes;
+    private final long[] generations;
+    //where the next one goes, the oldest one is overwritten once all are taken
+    private int next;
+    private int recorded;
+    //open addressing, the index of a generation in the arrays above +1, or 0 if empty
+    private final int[] slots;
+    private volatile long start = -1;
+    private volatile long period;
+
+    /**
+     * @param history how many generations are remembered, a cycle can't be longer than that
+     */
+    CycleDetector(int history)
+    {
+        if(history < 1)
+            throw new IllegalArgumentException("At least one generation has to be remembered");
+
+        this.history = history;
+        this.hashes = new long[history];
+        this.generations = new long[history];
+        //at most half full, so the probe sequences stay short
+        this.slots = new int[Integer.highestOneBit(history)*4];
+    }
+
+    /**
+     * @return a detector that gets every generation of the grid if {@link Initializer#setCycleDetection(int)}
+     *         is set, otherwise {@code null}; also {@code null} if the cells declare channels, which
+     *         the hash doesn't cover
+     */
+    static CycleDetector attach(Grid grid)
+    {
+        if(Settings.cycleHistory == 0 || grid.hasChannels())
+            return null;
+
+        CycleDetector cycles = new CycleDetector(Settings.cycleHistory);
+        grid.setCycleDetector(cycles);
+        cycles.record(grid.getHash(), grid.getGeneration());
+        return cycles;
+    }
+
+    /**
+     * @return the key of a cell for the hash of a generation, 0 for state 0 so it doesn't matter
+     *         how many cells in state 0 there are around the others
+     */
+    static long key(long x, long y, int state)
+    {
+        if(state == 0)
+            return 0;
+
+        //the finalizer of SplitMix64, so cells next to each other get unrelated keys
+        long key = x*0x9E3779B97F4A7C15L + y*0xC2B2AE3D27D4EB4FL + state*0x165667B19E3779F9L;
+        key = (key ^ key >>> 30) * 0xBF58476D1CE4E5B9L;
+        key = (key ^ key >>> 27) * 0x94D049BB133111EBL;
+        return key ^ key >>> 31;
+    }
+
+    /**
+     * remembers a generation, called by the grid on the thread stepping it
+     */
+    void record(long hash, long generation)
+    {
+        //the next generations are known from here on
+        if(period != 0)
+            return;
+
+        int slot = find(hash);
+
+        if(slots[slot] != 0)
+        {
+            start = generations[slots[slot]-1];
+            period = generation - start;
+            return;
+        }
+
+        if(recorded == history)
+            remove(hashes[next]);
+        else
+            recorded++;
+
+        hashes[next] = hash;
+        generations[next] = generation;
+        slots[find(hash)] = next+1;
+        next = (next+1) % history;
+    }
+
+    /**
+     * forgets every generation, e.g. after cells were changed from the outside
+     */
+    void clear()
+    {
+        Arrays.fill(slots, 0);
+        next = 0;
+        recorded = 0;
+        period = 0;
+        start = -1;
+    }
+
+    /**
+     * @return whether the grid repeats itself
+     */
+    boolean isCycling() { return period != 0; }
+
+    /**
+     * @return how many generations a cycle takes (1 if the grid doesn't change anymore),
+     *         or 0 if no cycle was found (yet)
+     */
+    long getPeriod() { return period; }
+
+    /**
+     * @return the first generation that is repeated, or -1 if no cycle was found (yet)
+     */
+    long getStart() { return start; }
+
+    /**
+     * @return the slot of the given hash, or the empty slot where it would go
+     */
+    private int find(long hash)
+    {
+        int mask = slots.length-1;
+        int slot = (int)(hash ^ hash >>> 32) & mask;
+
+        while(slots[slot] != 0 && hashes[slots[slot]-1] != hash)
+            slot = (slot+1) & mask;
+
+        return slot;
+    }
+
+    /**
+     * removes a hash, moving the ones behind it back so no probe sequence has a gap
+     */
+    private void remove(long hash)
+    {
+        int mask = slots.length-1;
+        int empty = find(hash);
+
+        slots[empty] = 0;
+
+        for(int slot = (empty+1) & mask; slots[slot] != 0; slot = (slot+1) & mask)
+        {
+            long moved = hashes[slots[slot]-1];
+            int home = (int)(moved ^ moved >>> 32) & mask;
+
+            //it can move into the gap if its probe sequence passes it
+            if(((slot - home) & mask) >= ((slot - empty) & mask))
+            {
+                slots[empty] = slots[slot];
+                slots[slot] = 0;
+                empty = slot;
+            }
+        }
+    }
+
+    /**
+     * @return the cycle as it's shown on the overlay of the window
+     */
+    @Override
+    public String toString()
+    {
+        long period = this.period;
+        long start = this.start;
+
+        //cleared between reading the two
+        if(period == 0 || start < 0)
+            return "no cycle found";
+        if(period == 1)
+            return "still since generation " + start;
+
+        return "period " + period + " since generation " + start;
+    }
+}
@@ -0,0 +1,19 @@
+package io.github.keheck;
+
+/**
+ * How a block of cells is drawn when the camera is zoomed out so far that
+ * a cell is smaller than a pixel (see {@link Initializer#setDownsampling(Downsampling)}).
+ * Large blocks are only sampled, so the cost doesn't grow with the size of the grid.
+ */
+
+public enum Downsampling
+{
+    /**
+     * The average color of the cells, e.g. a grey tone for the density of a two-state grid
+     */
+    MEAN,
+    /**
+     * The color of the state most of the cells are in
+     */
+    MAJORITY
+}
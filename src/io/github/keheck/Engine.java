@@ -0,0 +1,61 @@
+package io.github.keheck;
+
+/**
+ * The ways a {@link Grid} can be stepped (see {@link Initializer#setEngine(Engine)})
+ */
+
+public enum Engine
+{
+    /**
+     * Picks {@link #BIT_PACKED} for two-state cells declaring an {@link OuterTotalisticRule}
+     * (as long as it supports the neighbourhood and the {@link Boundary}),
+     * {@link #TABLE} for cells declaring any other {@link Cell#getRule()} and
+     * {@link #CELLS} for everything else, including all cells declaring {@link Cell#getChannels()}.
+     */
+    AUTO,
+    /**
+     * Applies {@link Cell#changeState(Neighbourhood)} to every cell of the grid.
+     * Works with every ruleset, {@link NeighbourhoodShape} and {@link Boundary}, and is the
+     * only engine that keeps the {@link Channel}s of the cells.
+     */
+    CELLS,
+    /**
+     * Keeps the universe in a memoized quadtree and can step it by 2^k generations
+     * at once (see {@link Initializer#setHashLifeStep(int)}). The universe is
+     * unbounded, the grid only shows the part of it between (0|0) and
+     * (width|height), so the {@link Boundary} doesn't apply. Needs an
+     * {@link OuterTotalisticRule} and {@link NeighbourhoodShape#MOORE}.
+     */
+    HASHLIFE,
+    /**
+     * Keeps the cells in chunks of 64 x 64 that are only allocated while one of their cells
+     * isn't in state 0, and only steps the chunks that changed and the ones around them.
+     * The universe is unbounded, so patterns can grow as far as they like and the memory
+     * grows with the area that is alive; the grid shows the part of it between (0|0) and
+     * (width|height), which can be moved with the arrow keys. The {@link Boundary} doesn't
+     * apply. Works with every {@link Cell#getRule()} whose state 0 stays 0 when all the
+     * neighbours are in state 0.
+     */
+    CHUNKED,
+    /**
+     * Packs 64 cells into a {@code long} and steps all of them at once.
+     * Same results as {@link #CELLS}, but needs an {@link OuterTotalisticRule},
+     * {@link NeighbourhoodShape#MOORE} and dead cells outside the grid ({@link Boundary#TRUNCATED}
+     * or {@link Boundary#FIXED} at state 0); {@link Initializer#setChangeTracking(boolean)} doesn't apply.
+     */
+    BIT_PACKED,
+    /**
+     * Looks up the next state of every cell in the table compiled from
+     * {@link Cell#getRule()} instead of calling {@link Cell#changeState(Neighbourhood)}.
+     * Same results as {@link #CELLS}.
+     */
+    TABLE,
+    /**
+     * Like {@link #TABLE}, but sums up the neighbours of several cells of a row at once with the
+     * SIMD instructions of the CPU, through the Vector API (see {@link Rule#vectorized()}). That needs
+     * Java 17 or newer, the JVM started with {@code --add-modules jdk.incubator.vector}, vectors
+     * of at least 256 bits (AVX2) and at most 256 states kept on the heap; otherwise the grid is
+     * stepped just like with {@link #TABLE}. Same results as {@link #CELLS}.
+     */
+    VECTOR
+}
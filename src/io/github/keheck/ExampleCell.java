@@ -11,25 +11,25 @@ import java.util.Random;
 
 public final class ExampleCell extends Cell
 {
+    //the default ruleset of Cell, declared as a table: the sum of the neighbours mod 8
+    private static final Rule RULE = Rule.outerTotalistic(8, (state, sum) -> sum % 8);
+    private static final Color[] COLORS = {
+            new Color(0),
+            new Color(255, 0, 0),
+            new Color(255, 126, 0),
+            new Color(255, 255, 0),
+            new Color(0, 255, 0),
+            new Color(0, 126, 255),
+            new Color(255, 0, 255),
+            new Color(0, 255, 255)
+    };
+    private static final Color STROKE = new Color(127, 127, 127);
+
     /**
      * @inheritDoc
      */
     @Override
-    public Color getFillColor()
-    {
-        switch(getState())
-        {
-            case 0:  return new Color(0);
-            case 1:  return new Color(255, 0, 0);
-            case 2:  return new Color(255, 126, 0);
-            case 3:  return new Color(255, 255, 0);
-            case 4:  return new Color(0, 255, 0);
-            case 5:  return new Color(0, 126, 255);
-            case 6:  return new Color(255, 0, 255);
-            case 7:  return new Color(0, 255, 255);
-            default: return new Color(255, 255, 255);
-        }
-    }
+    public Color getFillColor() { return getState() < COLORS.length ? COLORS[getState()] : Color.WHITE; }
 
     @Override
     public int getStates() { return 8; }
@@ -38,7 +38,13 @@ public final class ExampleCell extends Cell
      * @inheritDoc
      */
     @Override
-    public Color getStrokeColor() { return new Color(127, 127, 127); }
+    public Rule getRule() { return RULE; }
+
+    /**
+     * @inheritDoc
+     */
+    @Override
+    public Color getStrokeColor() { return STROKE; }
 
     /**
      * @inheritDoc
@@ -1,278 +1,1294 @@
 package io.github.keheck;
 
-import processing.core.PVector;
-import sun.reflect.generics.factory.CoreReflectionFactory;
-
-import java.awt.*;
-import java.beans.PropertyVetoException;
-import java.lang.reflect.InvocationTargetException;
-import java.util.ArrayList;
+import java.lang.invoke.MethodHandle;
+import java.lang.invoke.MethodHandles;
+import java.lang.invoke.MethodType;
+import java.lang.reflect.Modifier;
+import java.util.Arrays;
 import java.util.Random;
-
-import static io.github.keheck.CellularAutomatonAPI.cam;
-import static io.github.keheck.CellularAutomatonAPI.instance;
+import java.util.SplittableRandom;
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.RecursiveAction;
+import java.util.function.Supplier;
+import java.util.stream.IntStream;
 
 /**
  * The space the whole simulation is contained in. It updates
  * every tick (when {@link CellularAutomatonAPI#simMode} is 1, a tick is defined
- * in milliseconds by the {@link CellularAutomatonAPI#tickLength} field) or every
- * time you hit the enter key (see {@link CellularAutomatonAPI#keyPressed()}).
+ * in milliseconds by the {@link Settings#tickLength} field), every
+ * time you hit the enter key (see {@link CellularAutomatonAPI#keyPressed()})
+ * or as fast as possible when run by a {@link Simulation}. It doesn't know
+ * anything about Processing, drawing is done by the {@link GridRenderer}.
+ *
+ * The states are kept in two {@link StateBuffer}s (on the heap, or outside of it with
+ * {@link Settings#offHeap}): {@link #current} holds the
+ * generation that is displayed, {@link #next} is written by {@link #update()}
+ * and the two are swapped afterwards. The {@link Cell} instances only serve as
+ * flyweights: their state is set right before the ruleset or a color is queried.
+ * The {@link Channel}s declared by the cells are kept next to the states in two
+ * {@link Channels}, laid out like the buffers and swapped with them.
+ *
+ * With more than one thread, {@link #update()} splits the grid into {@link Band}s of
+ * rows and steps them on a {@link ForkJoinPool}. Every cell only depends on the previous
+ * generation, so the result is the same as stepping the grid on a single thread.
+ *
+ * With {@link Settings#changeTracking}, the grid is divided into square tiles of
+ * {@link #TRACKING_TILE} cells (or the radius of the neighbourhood, if it reaches further). Only tiles that changed in the last generation, and
+ * the tiles around them, are evaluated again; the others are skipped. A skipped tile
+ * didn't change in the last generation, so both buffers already hold its state.
+ *
+ * With {@link Engine#HASHLIFE}, the cells are kept in an unbounded {@link HashLife}
+ * universe instead; the buffers only hold the part of it shown by the grid.
+ * With {@link Engine#CHUNKED}, they are kept in an unbounded {@link ChunkedUniverse} as well,
+ * which only allocates the parts that are alive; the grid shows the part of it from
+ * {@link #moveView(int, int)} on.
+ * With {@link Engine#BIT_PACKED}, they are kept in a {@link BitGrid} and only
+ * unpacked into {@link #current} when somebody looks at them. With {@link Engine#TABLE},
+ * the next states are looked up in the {@link Rule} instead of calling the cell, with
+ * {@link Engine#VECTOR} for several cells of a row at once.
+ *
+ * The buffers surround the cells with a halo as wide as the radius of the
+ * {@link NeighbourhoodShape}, so the cell at (x|y) is at {@link #index(int, int)}.
+ * The halo holds what the cells at the edges see outside the grid (see {@link Boundary})
+ * and is filled before every generation, so the rules can read every neighbour
+ * without checking whether it's inside the grid. For {@link Boundary#TRUNCATED} and
+ * {@link Boundary#FIXED} it never changes, so it's only filled once.
  */
 
 final class Grid
 {
+    static final int TRACKING_TILE = 16;
+    //how many cells along each axis share a generator in randomize()
+    static final int SEED_TILE = 64;
+
     private int width;
     private int height;
-    private int cellSize;
-    private Cell[][] cells;
+    private NeighbourhoodShape shape;
+    private Boundary boundary;
+    private int boundaryState;
+    private int halo;
+    //the index distance between two rows, including the halo
+    private int stride;
+    //the index of the cell at (0|0)
+    private int origin;
+    //whether the halo changes with the cells
+    private boolean wrapping;
+    private StateBuffer current;
+    private StateBuffer next;
+    //the channels of the current and the next generation, without any if the cells don't declare them
+    private Channels currentChannels;
+    private Channels nextChannels;
     private Class<? extends Cell> clazz;
-    PVector lastCell;
+    //builds the flyweights, see factory(Class)
+    private Supplier<? extends Cell> factory;
+    private Cell cell;
+    private Neighbourhood neighbourhood;
+    private ForkJoinPool pool;
+    private Band[] bands;
+    private AllBands allBands;
+    private boolean tracking;
+    //the size of a tracking tile, at least as big as the halo so a change only reaches the tiles next to it
+    private int tile;
+    private int tilesX;
+    private int tilesY;
+    //the tiles evaluated in the next generation
+    private boolean[] active;
+    //the tiles that changed in the current generation
+    private boolean[] changed;
+    //the rows/columns of tiles around a changed area
+    private int[] rowsAround;
+    private int[] columnsAround;
+    private int evaluated;
+    private HashLife universe;
+    private ChunkedUniverse chunks;
+    //the cell of the chunks shown at (0|0)
+    private int viewX;
+    private int viewY;
+    private BitGrid bits;
+    private Rule table;
+    private int[] deltas;
+    //whether the universe/bits have to be rebuilt from the current buffer before the next step
+    private boolean reload;
+    //whether the bits are ahead of the current buffer
+    private boolean stale;
+    private long generationsPerUpdate = 1;
+    private long generation;
+    //counts every change of the states, see getModifications()
+    private long modifications;
+    private Recorder recorder;
+    private Metrics metrics;
+    private CycleDetector cycles;
+    //the hash of the current generation (see CycleDetector), only kept up to date while hashing is on
+    private long hash;
+    private boolean hashing;
 
     /**
-     * Constructs the Grid with the given width, height, cell size and the path to
-     * a class inheriting {@link Cell}.
+     * Constructs the Grid with the given width, height and the path to
+     * a class inheriting {@link Cell}. How it is stepped is read from the
+     * {@link Settings} ({@link Settings#engine}, {@link Settings#threads},
+     * {@link Settings#tileSize}, {@link Settings#changeTracking}, {@link Settings#offHeap} and the HashLife options),
+     * the neighbourhood from {@link Settings#shape} and {@link Settings#boundary}.
      * @param width the width of the grid (in cells)
      * @param height the height of the grid (in cells)
-     * @param cellSize the size of avery cell
      */
-    Grid(int width, int height, int cellSize, Class<? extends Cell> clazz)
+    Grid(int width, int height, Class<? extends Cell> clazz) { this(width, height, factory(clazz), false); }
+
+    /**
+     * @param factory builds the cells instead of the constructor of their class (see {@link Initializer#setCellFactory(Supplier)})
+     */
+    Grid(int width, int height, Supplier<? extends Cell> factory) { this(width, height, factory, false); }
+
+    /**
+     * @param partitioned whether the grid is a strip of a {@link Partition}, which steps it in parts
+     *                    and so can't use the engines keeping the cells outside the buffers
+     */
+    Grid(int width, int height, Supplier<? extends Cell> factory, boolean partitioned)
     {
+        int threads = Settings.threads;
+        int tileSize = Settings.tileSize;
+
         this.width = width;
         this.height = height;
-        this.cells = new Cell[width][height];
-        this.cellSize = cellSize;
-        this.clazz = clazz;
+        this.factory = factory;
+        this.shape = Settings.shape;
+        this.boundary = Settings.boundary;
+        this.boundaryState = boundary == Boundary.FIXED ? Settings.boundaryState : 0;
+        this.halo = shape.getRadius();
+        this.stride = width + 2*halo;
+        this.origin = halo*stride + halo;
+        this.wrapping = boundary == Boundary.TOROIDAL || boundary == Boundary.REFLECTIVE;
+
+        this.cell = newCell();
+        this.clazz = cell.getClass();
+
+        Channel[] channels = cell.getChannels();
+        Channels.check(channels);
+
+        if((long)stride*(height + 2*halo) > Integer.MAX_VALUE)
+            throw new IllegalArgumentException("A grid can't hold more than " + Integer.MAX_VALUE + " cells, including the halo");
+
+        if(boundaryState >= cell.getStates())
+            throw new IllegalArgumentException("The boundary state " + boundaryState + " isn't a state of " + clazz.getName());
 
-        for(int x = 0; x < width; x++)
+        this.current = StateBuffer.create(stride*(height + 2*halo), cell.getStates(), Settings.offHeap);
+        this.next = StateBuffer.create(stride*(height + 2*halo), cell.getStates(), Settings.offHeap);
+        this.currentChannels = new Channels(channels, stride*(height + 2*halo));
+        this.nextChannels = new Channels(channels, stride*(height + 2*halo));
+        this.neighbourhood = new Neighbourhood(this);
+        fillHalo(current, currentChannels);
+        fillHalo(next, nextChannels);
+
+        Engine engine = Settings.engine;
+
+        Rule rule = cell.getRule();
+        //the bits and the universe only know the eight surrounding cells and dead cells outside the grid
+        boolean lifeLike = rule instanceof OuterTotalisticRule && shape.equals(NeighbourhoodShape.MOORE);
+        boolean dead = boundaryState == 0 && !wrapping;
+
+        if(engine == Engine.AUTO)
         {
-            for(int y = 0; y < height; y++)
+            if(channels.length > 0)
+                engine = Engine.CELLS;
+            else if(cell.getStates() == 2 && lifeLike && dead && !partitioned)
+                engine = Engine.BIT_PACKED;
+            else
+                engine = rule != null ? Engine.TABLE : Engine.CELLS;
+        }
+
+        if(engine != Engine.CELLS && rule == null)
+            throw new IllegalArgumentException("The " + engine + " engine needs a cell class declaring its rule (see Cell#getRule())");
+        if(rule != null && !rule.getShape().equals(shape))
+            throw new IllegalArgumentException("The rule of " + clazz.getName() + " was compiled for another neighbourhood");
+        if(rule != null && rule.getStates() != cell.getStates())
+            throw new IllegalArgumentException("The rule of " + clazz.getName() + " has " + rule.getStates() + " states, the cell " +
+                                               cell.getStates());
+        if((engine == Engine.HASHLIFE || engine == Engine.BIT_PACKED) && !lifeLike)
+            throw new IllegalArgumentException("The " + engine + " engine needs a two-state OuterTotalisticRule and the Moore neighbourhood");
+        if(engine == Engine.BIT_PACKED && !dead)
+            throw new IllegalArgumentException("The " + engine + " engine needs cells outside the grid to be dead");
+        if(channels.length > 0 && engine != Engine.CELLS)
+            throw new IllegalArgumentException("The " + engine + " engine only keeps the states, cells declaring channels need " + Engine.CELLS);
+        if(channels.length > 0 && partitioned)
+            throw new IllegalArgumentException("Cells declaring channels can't be partitioned");
+        if(partitioned && engine != Engine.CELLS && engine != Engine.TABLE && engine != Engine.VECTOR)
+            throw new IllegalArgumentException("The " + engine + " engine can't be partitioned, use " + Engine.TABLE + ", " +
+                                               Engine.VECTOR + " or " + Engine.CELLS);
+
+        if(engine == Engine.HASHLIFE)
+        {
+            this.universe = new HashLife((OuterTotalisticRule)rule, Settings.hashLifeNodes);
+            this.reload = true;
+            this.generationsPerUpdate = 1L << Settings.hashLifeStep;
+        }
+        else if(engine == Engine.CHUNKED)
+        {
+            this.chunks = new ChunkedUniverse(rule);
+            this.reload = true;
+        }
+        else if(engine == Engine.BIT_PACKED)
+        {
+            this.bits = new BitGrid(width, height, (OuterTotalisticRule)rule);
+            this.reload = true;
+        }
+        else if(engine == Engine.TABLE || engine == Engine.VECTOR)
+        {
+            this.table = engine == Engine.VECTOR ? rule.vectorized() : rule;
+            this.deltas = shape.deltas(stride);
+        }
+
+        if(threads > 1)
+        {
+            this.pool = new ForkJoinPool(threads);
+            this.bands = new Band[(height+tileSize-1)/tileSize];
+
+            for(int i = 0; i < bands.length; i++)
+                bands[i] = new Band(i*tileSize, Math.min(height, (i+1)*tileSize));
+
+            this.allBands = new AllBands();
+        }
+
+        //a cell may change its channels without changing its state
+        this.tracking = Settings.changeTracking && channels.length == 0 && (engine == Engine.CELLS || engine == Engine.TABLE || engine == Engine.VECTOR);
+        this.tile = Math.max(TRACKING_TILE, halo);
+        this.tilesX = (width+tile-1)/tile;
+        this.tilesY = (height+tile-1)/tile;
+
+        if(tracking)
+        {
+            this.active = new boolean[tilesX*tilesY];
+            this.changed = new boolean[tilesX*tilesY];
+            this.rowsAround = new int[tile + 2*halo];
+            this.columnsAround = new int[tile + 2*halo];
+            Arrays.fill(active, true);
+        }
+    }
+
+    /**
+     * Looks up the constructor without parameters of the class once, so building a cell
+     * afterwards is just a call of it instead of a reflective lookup.
+     * @return a factory calling the constructor
+     * @throws IllegalArgumentException if the class can't be instantiated like that
+     */
+    static Supplier<Cell> factory(Class<? extends Cell> clazz)
+    {
+        MethodHandle constructor;
+
+        if(Modifier.isAbstract(clazz.getModifiers()))
+            throw new IllegalArgumentException("Couldn't instantiate " + clazz.getName() + ", it's abstract");
+
+        try
+        {
+            constructor = MethodHandles.lookup().findConstructor(clazz, MethodType.methodType(void.class))
+                                       .asType(MethodType.methodType(Cell.class));
+        } catch (NoSuchMethodException e)
+        {
+            throw new IllegalArgumentException(clazz.getName() + " needs a constructor without parameters", e);
+        } catch (IllegalAccessException e)
+        {
+            throw new IllegalArgumentException("The constructor of " + clazz.getName() + " isn't accessible", e);
+        }
+
+        return () ->
+        {
+            try
             {
-                try
-                {
-                    cells[x][y] = clazz.getDeclaredConstructor().newInstance();
-                } catch (InstantiationException | IllegalAccessException | NoSuchMethodException | InvocationTargetException e)
-                {
-                    handleException(e);
-                }
+                return (Cell)constructor.invokeExact();
+            } catch (RuntimeException | Error e)
+            {
+                throw e;
+            } catch (Throwable e)
+            {
+                throw new IllegalArgumentException("Couldn't instantiate " + clazz.getName(), e);
             }
-        }
+        };
+    }
+
+    /**
+     * @return a new instance of the cell class, e.g. to be used as a flyweight on another thread
+     * @throws IllegalArgumentException if the factory doesn't build one
+     */
+    Cell newCell()
+    {
+        Cell cell = factory.get();
+
+        if(cell == null)
+            throw new IllegalArgumentException("The cell factory returned null");
+
+        return cell;
+    }
+
+    int getWidth() { return width; }
+
+    int getHeight() { return height; }
+
+    NeighbourhoodShape getShape() { return shape; }
+
+    Boundary getBoundary() { return boundary; }
+
+    /**
+     * @return the state of the cells outside a {@link Boundary#FIXED} grid
+     */
+    int getBoundaryState() { return boundaryState; }
+
+    /**
+     * @return the index distance between two rows of the buffers
+     */
+    int getStride() { return stride; }
+
+    /**
+     * @return the index of the cell at (x|y) in the buffers
+     */
+    int index(int x, int y) { return origin + y*stride + x; }
+
+    /**
+     * @return the state of the cell at (x|y) in the current generation
+     */
+    int getState(int x, int y)
+    {
+        sync();
+        return current.get(index(x, y));
     }
 
-    private void handleException(Exception e)
+    /**
+     * copies the current generation, including the halo, so the copy is laid out like the grid
+     * @param into the buffer to copy into, or {@code null} to get a new one
+     * @return the copy
+     */
+    StateBuffer copyStates(StateBuffer into)
+    {
+        sync();
+
+        if(into == null)
+            into = StateBuffer.create(current.size, cell.getStates(), current.isOffHeap());
+
+        current.copyTo(into);
+        return into;
+    }
+
+    /**
+     * copies the current generation without the halo, row by row
+     * @param into a buffer of width*height cells
+     */
+    void copyCells(StateBuffer into) { exportRows(0, height, into); }
+
+    /**
+     * @return whether the cells declare any {@link Channel}s
+     */
+    boolean hasChannels() { return currentChannels.getChannels().length > 0; }
+
+    /**
+     * copies the channels of the current generation without the halo, row by row
+     * @param into channels of width*height cells
+     */
+    void copyChannels(Channels into)
+    {
+        for(int y = 0; y < height; y++)
+            currentChannels.copy(index(0, y), into, y*width, width);
+    }
+
+    /**
+     * @return whether the states are kept outside of the heap (see {@link Settings#offHeap})
+     */
+    boolean isOffHeap() { return current.isOffHeap(); }
+
+    /**
+     * @param recorder gets every generation from now on, or {@code null} to stop recording
+     */
+    void setRecorder(Recorder recorder) { this.recorder = recorder; }
+
+    /**
+     * @param metrics measures every update from now on, or {@code null} to stop measuring
+     */
+    void setMetrics(Metrics metrics) { this.metrics = metrics; }
+
+    /**
+     * @param cycles gets the hash of every generation that is stepped from now on
+     */
+    void setCycleDetector(CycleDetector cycles) { this.cycles = cycles; }
+
+    /**
+     * The hash of the current generation, see {@link CycleDetector}. The first call looks at
+     * every cell; after that only the cells that change are looked at while the grid is stepped,
+     * until the cells are changed from the outside again ({@link #invalidate()}).
+     * With {@link Engine#HASHLIFE} and {@link Engine#CHUNKED} it covers the whole universe,
+     * including the cells the grid doesn't show.
+     */
+    long getHash()
     {
-        if(e instanceof InstantiationException)
+        if(universe != null && !reload)
+            return universe.hash();
+
+        if(chunks != null)
         {
-            System.err.println("Couldn't instantiate object of type " + clazz.getName());
-            e.printStackTrace();
-            System.exit(1);
+            if(reload)
+                chunks.load(current, width, height, origin, stride, viewX, viewY);
+
+            reload = false;
+            return chunks.getHash();
         }
-        else if(e instanceof NoSuchMethodException)
+
+        if(!hashing)
         {
-            System.err.println("Couldn't find method.");
-            e.printStackTrace();
-            System.exit(1);
+            sync();
+            hash = 0;
+
+            for(int y = 0; y < height; y++)
+                for(int x = 0; x < width; x++)
+                    hash ^= CycleDetector.key(x, y, current.get(index(x, y)));
+
+            //the universe isn't loaded yet, it takes over once it is
+            hashing = universe == null;
         }
-        else if(e instanceof IllegalAccessException)
+
+        return hash;
+    }
+
+    /**
+     * fills the halo of the given buffer and channels with what the cells at the edges see outside
+     * the grid, the channels of cells outside a truncated or fixed grid are 0
+     */
+    void fillHalo(StateBuffer states, Channels channels)
+    {
+        int outside = boundary == Boundary.FIXED ? boundaryState : 0;
+
+        for(int y = -halo; y < height+halo; y++)
         {
-            System.err.println("Access level too low");
-            e.printStackTrace();
-            System.exit(1);
+            boolean insideY = y >= 0 && y < height;
+            int fromY = boundary.map(y, height);
+
+            for(int x = -halo; x < width+halo; x++)
+            {
+                //skip the cells themselves
+                if(insideY && x == 0)
+                    x = width;
+
+                int fromX = boundary.map(x, width);
+                int from = fromX < 0 || fromY < 0 ? -1 : index(fromX, fromY);
+                states.set(index(x, y), from < 0 ? outside : states.get(from));
+                channels.copy(from, index(x, y));
+            }
         }
-        else
+    }
+
+    /**
+     * unpacks the bits into {@link #current} if they are ahead of it
+     */
+    private void sync()
+    {
+        if(stale)
+            bits.store(current, origin, stride);
+
+        stale = false;
+    }
+
+    /**
+     * calls {@link #randomize(long)} with {@link Settings#seed}, or with a new seed if none was set
+     */
+    void randomize() { randomize(Settings.seed != null ? Settings.seed : new SplittableRandom().nextLong()); }
+
+    /**
+     * Gives every cell a random state: with {@link Settings#distribution} it's drawn straight
+     * into the buffer, otherwise every cell's {@link Cell#randomizeState(Random)} is called.
+     *
+     * The grid is split into tiles of {@link #SEED_TILE} cells, which get generators split off
+     * the seed one after the other. The tiles are seeded in parallel, on the threads of the grid
+     * or, if it's stepped on a single thread, on the common pool of the JVM. Since every tile
+     * always gets the same generator, the same seed gives the same grid no matter how many
+     * threads there are.
+     */
+    void randomize(long seed) { randomize(seed, 0, height); }
+
+    /**
+     * Seeds a grid that is a strip of a bigger one (see {@link Partition}) with the same states
+     * the bigger grid gets from {@link #randomize(long)}. The generators of the tiles above
+     * the strip are skipped, the cells of a tile above the strip are drawn and dropped
+     * (as if they were in state 0).
+     * @param originY the row of the bigger grid that is row 0 of this one
+     * @param totalHeight the height of the bigger grid, which is as wide as this one
+     */
+    void randomize(long seed, int originY, int totalHeight)
+    {
+        sync();
+
+        double[] thresholds = thresholds(Settings.distribution);
+        int fromY = Math.max(originY, 0);
+        int toY = Math.min(originY + height, totalHeight);
+        int columns = (width + SEED_TILE-1)/SEED_TILE;
+        int firstRow = fromY/SEED_TILE;
+        int rows = fromY < toY ? (toY-1)/SEED_TILE - firstRow + 1 : 0;
+        SplittableRandom random = new SplittableRandom(seed);
+        long[] seeds = new long[columns*rows];
+
+        for(long tile = 0; tile < (long)firstRow*columns; tile++)
+            random.nextLong();
+
+        for(int tile = 0; tile < seeds.length; tile++)
+            seeds[tile] = random.nextLong();
+
+        //a parallel stream started from inside a pool runs on it
+        (pool != null ? pool : ForkJoinPool.commonPool())
+                .submit(() -> IntStream.range(0, seeds.length).parallel()
+                                       .forEach(tile -> randomizeTile(firstRow*columns + tile, columns, seeds[tile],
+                                                                      thresholds, originY, fromY, toY))).join();
+
+        invalidate();
+    }
+
+    /**
+     * @param distribution how likely each state is, or {@code null}
+     * @return the probability of the states up to each state, or {@code null} without a distribution
+     */
+    private double[] thresholds(double[] distribution)
+    {
+        if(distribution == null)
+            return null;
+        if(distribution.length > cell.getStates())
+            throw new IllegalArgumentException("The distribution is set for " + distribution.length +
+                                               " states, the cells only have " + cell.getStates());
+
+        double total = 0;
+
+        for(double weight : distribution)
+            total += weight;
+
+        double[] thresholds = new double[distribution.length];
+        double sum = 0;
+
+        for(int state = 0; state < distribution.length; state++)
         {
-            e.printStackTrace();
-            System.exit(1);
+            sum += distribution[state];
+            thresholds[state] = sum/total;
         }
+
+        return thresholds;
     }
 
     /**
-     * when {@link CellularAutomatonAPI#random} it true, it calls every cell's
-     * {@link Cell#randomizeState(Random)} method.
+     * seeds the cells of the tile between the rows {@code fromY} and {@code toY} of the bigger grid
+     * (see {@link #randomize(long, int, int)})
      */
-    void randomize()
+    private void randomizeTile(int tile, int columns, long seed, double[] thresholds, int originY, int fromY, int toY)
     {
-        for(int i = 0; i < width; i++)
+        int startX = tile % columns * SEED_TILE;
+        int startY = tile / columns * SEED_TILE;
+        int endX = Math.min(startX + SEED_TILE, width);
+        int endY = Math.min(startY + SEED_TILE, toY);
+
+        if(thresholds != null)
         {
-            for(int j = 0; j < height; j++)
+            SplittableRandom random = new SplittableRandom(seed);
+
+            for(int y = startY; y < endY; y++)
             {
-                cells[i][j].randomizeState(new Random());
+                for(int x = startX; x < endX; x++)
+                {
+                    double value = random.nextDouble();
+                    int state = 0;
+
+                    while(state < thresholds.length-1 && value >= thresholds[state])
+                        state++;
+
+                    if(y >= fromY)
+                        current.set(index(x, y - originY), state);
+                }
+            }
+        }
+        else
+        {
+            //every tile gets its own flyweight, the tiles may be seeded in parallel
+            Random random = new Random(seed);
+            Cell cell = newCell();
+
+            cell.bindChannels(currentChannels, currentChannels);
+
+            for(int y = startY; y < endY; y++)
+            {
+                for(int x = startX; x < endX; x++)
+                {
+                    int index = index(x, y - originY);
+                    cell.setState(y >= fromY ? current.get(index) : 0);
+                    cell.setIndex(index);
+                    cell.randomizeState(random);
+
+                    if(y >= fromY)
+                        current.set(index, cell.getState());
+                }
             }
         }
     }
 
-    Cell getCellAtPrevSafe(PVector coords)
+    /**
+     * cycles the state of the cell at (x|y) (see {@link Cell#cycleState()})
+     */
+    void cycleState(int x, int y)
     {
-        if(coords.equals(lastCell))
-            return null;
+        sync();
+
+        int index = index(x, y);
+        int previous = current.get(index);
+        cell.setState(previous);
+        cell.cycleState();
+        current.set(index, cell.getState());
 
-        lastCell = coords;
+        if(hashing)
+            hash ^= CycleDetector.key(x, y, previous) ^ CycleDetector.key(x, y, cell.getState());
+        if(cycles != null)
+            cycles.clear();
 
-        if(coords.x < 0 || coords.y < 0 || coords.x >= width || coords.y >= height)
-            return cells[0][0];
+        if(universe != null && !reload)
+            universe.set(x, y, cell.getState());
+        if(chunks != null && !reload)
+            chunks.set(viewX + x, viewY + y, cell.getState());
+        if(bits != null)
+            reload = true;
+
+        if(tracking)
+            activateAround(x, x+1, y, y+1);
+
+        modifications++;
+    }
 
-        return cells[(int)coords.x][(int)coords.y];
+    /**
+     * overwrites the state of the cell at (x|y), e.g. when a saved grid is loaded;
+     * call {@link #invalidate()} after the last one
+     */
+    void setState(int x, int y, int state)
+    {
+        sync();
+        current.set(index(x, y), state);
     }
 
+    /**
+     * @return whether the grid keeps the cells it doesn't show, see {@link Engine#CHUNKED}
+     */
+    boolean isUnbounded() { return chunks != null; }
+
+    /**
+     * overwrites the state of a cell that may lie outside of an unbounded grid;
+     * call {@link #invalidate()} after the last one
+     * @param x the x coordinate relative to the cell shown at (0|0)
+     * @param y the y coordinate relative to the cell shown at (0|0)
+     */
+    void setUnboundedState(int x, int y, int state)
+    {
+        if(x >= 0 && y >= 0 && x < width && y < height)
+            setState(x, y, state);
+        else
+            chunks.set(viewX + x, viewY + y, state);
+    }
+
+    /**
+     * moves the part of an unbounded grid that is shown, e.g. to follow a pattern that
+     * grew out of it
+     * @param dx how many cells to move to the right
+     * @param dy how many cells to move down
+     */
+    void moveView(int dx, int dy)
+    {
+        if(chunks == null)
+            throw new IllegalStateException("Only the " + Engine.CHUNKED + " engine keeps the cells outside the grid");
+
+        if(reload)
+            chunks.load(current, width, height, origin, stride, viewX, viewY);
+
+        reload = false;
+        viewX += dx;
+        viewY += dy;
+        chunks.store(current, width, height, origin, stride, viewX, viewY);
+        modifications++;
+    }
+
+    /**
+     * @return how many cells of an unbounded grid aren't in state 0, including the ones
+     *         it doesn't show, or {@link #getPopulation()} for any other grid
+     */
+    long getTotalPopulation()
+    {
+        if(chunks == null)
+            return getPopulation();
+        if(reload)
+            chunks.load(current, width, height, origin, stride, viewX, viewY);
+
+        reload = false;
+        return chunks.getPopulation();
+    }
+
+    /**
+     * sets the generation the grid is at, e.g. when a saved grid is loaded
+     */
+    void setGeneration(long generation) { this.generation = generation; }
+
     void resetGrid()
     {
-        for(int x = 0; x < width; x++)
+        if(chunks != null)
+            chunks.clear();
+
+        stale = false;
+        current.fill(0);
+        currentChannels.clear();
+        fillHalo(current, currentChannels);
+        invalidate();
+    }
+
+    /**
+     * makes sure every cell is evaluated in the next generation, e.g. after
+     * the states were changed from the outside
+     */
+    void invalidate()
+    {
+        if(tracking)
+            Arrays.fill(active, true);
+        if(cycles != null)
+            cycles.clear();
+
+        reload = true;
+        hashing = false;
+        modifications++;
+    }
+
+    /**
+     * @return how many generations were stepped since the grid was created
+     */
+    long getGeneration() { return generation; }
+
+    /**
+     * @return a number that changes whenever the states change (by stepping or
+     * from the outside), e.g. to find out whether they have to be drawn again
+     */
+    long getModifications() { return modifications; }
+
+    /**
+     * @return how many generations one call to {@link #update()} steps
+     * (1, unless {@link Settings#hashLifeStep} is used)
+     */
+    long getGenerationsPerUpdate() { return generationsPerUpdate; }
+
+    /**
+     * @return how many cells were evaluated in the last generation (all of them
+     * unless {@link Settings#changeTracking} is on, none with {@link Engine#HASHLIFE},
+     * the ones of the stepped chunks with {@link Engine#CHUNKED})
+     */
+    int getEvaluatedCells() { return evaluated; }
+
+    /**
+     * @return how many cells are not in state 0
+     */
+    int getPopulation()
+    {
+        sync();
+
+        int population = 0;
+
+        for(int y = 0; y < height; y++)
+            for(int x = 0; x < width; x++)
+                if(current.get(index(x, y)) != 0)
+                    population++;
+
+        return population;
+    }
+
+    /**
+     * @param states how many states to count at least, more are counted if a cell is in a state above them
+     *               (a cell may end up in a state above {@link Cell#getStates()})
+     * @param max how many states to count at most, the states above are counted in the last one
+     * @return how many cells are in each state, up to the highest one found
+     */
+    long[] countStates(int states, int max)
+    {
+        sync();
+
+        long[] counts = new long[Math.min(states, max)];
+
+        for(int y = 0; y < height; y++)
         {
-            for(int y = 0; y < height; y++)
+            for(int x = 0; x < width; x++)
             {
-                cells[x][y].setState(0);
+                int state = Math.min(current.get(index(x, y)), max-1);
+
+                if(state >= counts.length)
+                    counts = Arrays.copyOf(counts, state+1);
+
+                counts[state]++;
             }
         }
+
+        return counts;
+    }
+
+    /**
+     * only meaningful right after {@link #update()}, since it compares
+     * the two buffers
+     * @return how many cells changed their state in the last generation
+     */
+    int getChangedCells()
+    {
+        if(bits != null)
+            return bits.getChangedCells();
+
+        int changed = 0;
+
+        for(int y = 0; y < height; y++)
+            for(int x = 0; x < width; x++)
+                if(current.get(index(x, y)) != next.get(index(x, y)))
+                    changed++;
+
+        return changed;
     }
 
     /**
-     * Displays every cell with the color representing the state defined in
-     * {@link Cell#getFillColor()} with the stroke color defined in
-     * {@link Cell#getStrokeColor()} when {@link CellularAutomatonAPI#withStroke} is true.
+     * Steps {@link #getGenerationsPerUpdate()} generations
+     */
+    void update() { update(generationsPerUpdate); }
+
+    /**
+     * Steps the given number of generations. {@link Engine#HASHLIFE} takes them in as
+     * few steps as possible, the other engines step one generation after the other.
      */
-    void show()
+    void update(long generations)
     {
-        for(int x = 0; x < width; x++)
+        long start = metrics != null ? System.nanoTime() : 0;
+
+        if(universe != null)
         {
-            for(int y = 0; y < height; y++)
+            if(reload)
+                universe.load(current, width, height, origin, stride);
+
+            reload = false;
+            universe.step(generations);
+            universe.store(next, width, height, origin, stride);
+            evaluated = 0;
+
+            StateBuffer prevState = current;
+            current = next;
+            next = prevState;
+
+            if(recorder != null)
+                recorder.record(this, generation + generations);
+            //the generations in between are skipped, so the cycles are only found in multiples of the step
+            if(cycles != null)
+                cycles.record(getHash(), generation + generations);
+        }
+        else if(chunks != null)
+        {
+            if(reload)
+                chunks.load(current, width, height, origin, stride, viewX, viewY);
+
+            reload = false;
+
+            for(long i = 0; i < generations; i++)
             {
-                instance.fill(cells[x][y].getFillColor().getRGB());
-                if(instance.withStroke) instance.stroke(cells[x][y].getStrokeColor().getRGB());
-                else instance.noStroke();
-                instance.rect(x*cellSize, y*cellSize, cellSize, cellSize);
+                evaluated = chunks.step();
+
+                //the shown cells are only needed for the last generation, unless it's recorded, and for
+                //the one before it, so next holds the previous generation (see getChangedCells())
+                if(recorder != null || i >= generations-2)
+                {
+                    chunks.store(next, width, height, origin, stride, viewX, viewY);
+
+                    StateBuffer prevState = current;
+                    current = next;
+                    next = prevState;
+                }
+
+                if(recorder != null)
+                    recorder.record(this, generation + i+1);
+                if(cycles != null)
+                    cycles.record(getHash(), generation + i+1);
+            }
+        }
+        else
+        {
+            for(long i = 0; i < generations; i++)
+            {
+                nextGeneration();
+
+                if(recorder != null)
+                    recorder.record(this, generation + i+1);
+                if(cycles != null)
+                    cycles.record(getHash(), generation + i+1);
             }
         }
+
+        generation += generations;
+        modifications++;
+
+        if(metrics != null)
+            metrics.stepped(this, generations, System.nanoTime() - start);
     }
 
     /**
-     * converts the mouse position on the screen to grid coordinates
-     * depending on:
-     * <ul>
-     *     <li>the current scale</li>
-     *     <li>the current camera position</li>
-     * </ul>
-     * @param relMouseLoc the location of the mouse relative to the window location
-     * @return a {@code PVector} representing two indices for the {@link #cells} array
+     * Applies the ruleset defined in the {@link Cell#changeState(Neighbourhood)} method.
+     * The previous generation is read from {@link #current}, the new one is written
+     * to {@link #next}; afterwards the two buffers are swapped.
      */
-    PVector getBoardCoords(Point relMouseLoc)
+    private void nextGeneration()
     {
-        if(cam.pos.x == 0 && cam.pos.y == 0 && cam.scale == 1)
-        {
-            double cellSize = this.cellSize;
+        beginGeneration();
 
-            double scaledX = relMouseLoc.getX()/cellSize-0.5;
-            double scaledY = relMouseLoc.getY()/cellSize-0.5;
+        if(pool == null)
+        {
+            evaluated = step(cell, neighbourhood, 0, height);
 
-            return new PVector((float)Math.round(scaledX), (float)Math.round(scaledY));
+            if(hashing)
+                hash ^= hashChanges(0, height);
         }
         else
         {
-            System.out.println("Please reset the board first! (I'm too stupid to get the formular right)");
-            return new PVector(0, 0);
+            allBands.reinitialize();
+            pool.invoke(allBands);
+
+            for(Band band : bands)
+            {
+                evaluated += band.evaluated;
+                hash ^= band.hash;
+            }
         }
+
+        endGeneration();
     }
 
-    private Cell copy(Cell cell) throws NoSuchMethodException, IllegalAccessException, InvocationTargetException, InstantiationException
+    /**
+     * Starts a generation that is stepped in parts with {@link #stepRows(int, int)}, e.g. by
+     * a {@link Partition} that steps the rows in the middle while the rows next to its strip
+     * are still on their way. {@link #endGeneration()} finishes it.
+     */
+    void beginGeneration()
     {
-        return (Cell)clazz.getSuperclass().getDeclaredConstructor(int.class).newInstance(cell.getState());
+        if(bits != null && reload)
+            bits.load(current, origin, stride);
+
+        reload = false;
+        evaluated = 0;
+
+        if(wrapping)
+            fillHalo(current, currentChannels);
     }
 
     /**
-     * Applies the ruleset defined in the {@link Cell#changeState(Cell[])} method.
-     * It creates a copy of every cell so to not interferre with the original array
+     * steps the rows from {@code fromY} (inclusive) to {@code toY} (exclusive) on the calling thread
      */
-    void update()
+    void stepRows(int fromY, int toY)
     {
-        Cell[][] prevState = new Cell[width][height];
+        evaluated += step(cell, neighbourhood, fromY, toY);
+
+        if(hashing)
+            hash ^= hashChanges(fromY, toY);
+    }
 
-        for(int i = 0; i < width; i++)
+    /**
+     * Overwrites whole rows of the current generation after {@link #beginGeneration()},
+     * before the rows next to them are stepped. The rows themselves are never stepped, they are
+     * imported every generation. Unlike {@link #setState(int, int, int)} only the tiles around
+     * the cells that differ from the last generation's import are evaluated again.
+     * @param states the new states, row by row
+     */
+    void importRows(int fromY, int toY, StateBuffer states)
+    {
+        for(int y = fromY; y < toY; y++)
         {
-            for(int j = 0; j < height; j++)
+            int row = index(0, y);
+            int offset = (y-fromY)*width;
+            //the start of the tile that changed last, so each one is only activated once
+            int activated = -1;
+
+            for(int x = 0; x < width; x++)
             {
-                try
+                int state = states.get(offset + x);
+
+                if(current.get(row + x) != state)
                 {
-                    Cell cell = cells[i][j];
-                    prevState[i][j] = copy(cell);
+                    if(hashing)
+                        hash ^= CycleDetector.key(x, y, current.get(row + x)) ^ CycleDetector.key(x, y, state);
+
+                    current.set(row + x, state);
                 }
-                catch (NoSuchMethodException | InstantiationException | InvocationTargetException | IllegalAccessException e)
+
+                //the imported rows aren't stepped, so current still holds the rows imported two generations
+                //ago; the cells around them last saw the ones in next
+                if(tracking && next.get(row + x) != state && x - x%tile != activated)
                 {
-                    handleException(e);
+                    activated = x - x%tile;
+                    activateAround(activated, Math.min(width, activated + tile), y, y+1);
                 }
             }
         }
 
-        for(int x = 0; x < width; x++)
+        //the halo next to the rows shows them as well
+        if(wrapping)
+            fillHalo(current, currentChannels);
+
+        modifications++;
+    }
+
+    /**
+     * copies whole rows of the current generation
+     * @param into receives the states, row by row
+     */
+    void exportRows(int fromY, int toY, StateBuffer into)
+    {
+        sync();
+
+        for(int y = fromY; y < toY; y++)
+            current.copy(index(0, y), into, (y-fromY)*width, width);
+    }
+
+    /**
+     * swaps the buffers once every row of the generation was stepped
+     */
+    void endGeneration()
+    {
+        if(bits != null)
         {
-            for(int y = 0; y < height; y++)
+            bits.swap();
+            stale = true;
+            return;
+        }
+
+        StateBuffer prevState = current;
+        current = next;
+        next = prevState;
+
+        Channels prevChannels = currentChannels;
+        currentChannels = nextChannels;
+        nextChannels = prevChannels;
+
+        if(tracking)
+            updateActiveTiles();
+    }
+
+    /**
+     * applies the ruleset to the rows from {@code fromY} (inclusive) to {@code toY} (exclusive)
+     * @return how many cells were evaluated
+     */
+    private int step(Cell cell, Neighbourhood neighbourhood, int fromY, int toY)
+    {
+        if(bits != null)
+        {
+            bits.step(fromY, toY);
+            return width*(toY-fromY);
+        }
+
+        if(!tracking)
+        {
+            step(cell, neighbourhood, 0, width, fromY, toY);
+            return width*(toY-fromY);
+        }
+
+        int evaluated = 0;
+
+        for(int tileY = fromY/tile; tileY*tile < toY; tileY++)
+        {
+            int startY = Math.max(fromY, tileY*tile);
+            int endY = Math.min(toY, (tileY+1)*tile);
+
+            for(int tileX = 0; tileX < tilesX; tileX++)
             {
-                ArrayList<Cell> surrounding = new ArrayList<>();
+                int index = tileY*tilesX + tileX;
 
-                if(x > 0 && y > 0 && x < width-1 && y < height-1)
-                {
-                    for(int i = -1; i <= 1; i++)
-                        for(int j = -1; j <= 1; j++)
-                            if(!(i == 0 && j == 0))
-                                surrounding.add(prevState[x+i][y+j]);
-                }
-                else if(x == 0 && y == 0)
-                {
-                    surrounding.add(prevState[x+1][y]  );
-                    surrounding.add(prevState[x+1][y+1]);
-                    surrounding.add(prevState[x]  [y+1]);
-                }
-                else if(x == width-1 && y == 0)
-                {
-                    surrounding.add(prevState[x-1][y]);
-                    surrounding.add(prevState[x-1][y+1]);
-                    surrounding.add(prevState[x][y+1]);
-                }
-                else if(x == 0 && y == height-1)
-                {
-                    surrounding.add(prevState[x]  [y-1]);
-                    surrounding.add(prevState[x+1][y-1]);
-                    surrounding.add(prevState[x+1][y]  );
-                }
-                else if(x == width-1 && y == height-1)
-                {
-                    surrounding.add(prevState[x-1][y]  );
-                    surrounding.add(prevState[x-1][y-1]);
-                    surrounding.add(prevState[x]  [y-1]);
-                }
-                else if(x == 0)
-                {
-                    surrounding.add(prevState[x]  [y-1]);
-                    surrounding.add(prevState[x+1][y-1]);
-                    surrounding.add(prevState[x+1][y]  );
-                    surrounding.add(prevState[x+1][y+1]);
-                    surrounding.add(prevState[x]  [y+1]);
-                }
-                else if(x == width-1)
-                {
-                    surrounding.add(prevState[x]  [y-1]);
-                    surrounding.add(prevState[x-1][y-1]);
-                    surrounding.add(prevState[x-1][y]  );
-                    surrounding.add(prevState[x-1][y+1]);
-                    surrounding.add(prevState[x]  [y+1]);
-                }
-                else if(y == 0)
-                {
-                    surrounding.add(prevState[x-1][y]  );
-                    surrounding.add(prevState[x-1][y+1]);
-                    surrounding.add(prevState[x]  [y+1]);
-                    surrounding.add(prevState[x+1][y+1]);
-                    surrounding.add(prevState[x+1][y]  );
-                }
-                else if(y == height-1)
-                {
-                    surrounding.add(prevState[x-1][y]  );
-                    surrounding.add(prevState[x-1][y-1]);
-                    surrounding.add(prevState[x]  [y-1]);
-                    surrounding.add(prevState[x+1][y-1]);
-                    surrounding.add(prevState[x+1][y]  );
-                }
-                else throw new IllegalStateException(String.format("x = %d, y = %d, height = %d, width = %d", x, y, width, height));
+                if(!active[index])
+                    continue;
+
+                int startX = tileX*tile;
+                int endX = Math.min(width, startX+tile);
+
+                //bands don't have to line up with the tiles, so two threads may both set this to true
+                if(step(cell, neighbourhood, startX, endX, startY, endY))
+                    changed[index] = true;
+
+                evaluated += (endX-startX)*(endY-startY);
+            }
+        }
+
+        return evaluated;
+    }
+
+    /**
+     * applies the ruleset to the given rectangle of cells
+     * @return whether any of the cells changed its state
+     */
+    private boolean step(Cell cell, Neighbourhood neighbourhood, int fromX, int toX, int fromY, int toY)
+    {
+        if(table != null)
+            return table.step(current, next, origin, stride, deltas, fromX, toX, fromY, toY);
+
+        boolean changed = false;
+        boolean channels = hasChannels();
+
+        if(channels)
+        {
+            cell.bindChannels(currentChannels, nextChannels);
+
+            //the channels that aren't set keep their values
+            for(int y = fromY; y < toY; y++)
+                currentChannels.copy(index(fromX, y), nextChannels, index(fromX, y), toX-fromX);
+        }
+
+        for(int y = fromY; y < toY; y++)
+        {
+            for(int x = fromX; x < toX; x++)
+            {
+                int index = index(x, y);
+                int state = current.get(index);
+                neighbourhood.moveTo(current, currentChannels, x, y);
+                cell.setState(state);
+
+                if(channels)
+                    cell.setIndex(index);
 
-                cells[x][y].changeState(surrounding.toArray(new Cell[0]));
+                cell.changeState(neighbourhood);
+                next.set(index, cell.getState());
+                changed |= cell.getState() != state;
             }
         }
+
+        return changed;
+    }
+
+    /**
+     * only meaningful between stepping the rows and {@link #endGeneration()}
+     * @return how the hash changes with the cells that changed in the given rows
+     */
+    private long hashChanges(int fromY, int toY)
+    {
+        if(bits != null)
+            return bits.hashChanges(fromY, toY);
+
+        if(!tracking)
+            return hashChanges(0, width, fromY, toY);
+
+        long changes = 0;
+
+        //the tiles that didn't change hold the same states in both buffers
+        for(int tileY = fromY/tile; tileY*tile < toY; tileY++)
+            for(int tileX = 0; tileX < tilesX; tileX++)
+                if(changed[tileY*tilesX + tileX])
+                    changes ^= hashChanges(tileX*tile, Math.min(width, (tileX+1)*tile),
+                                           Math.max(fromY, tileY*tile), Math.min(toY, (tileY+1)*tile));
+
+        return changes;
+    }
+
+    /**
+     * @return how the hash changes with the cells that changed in the given rectangle
+     */
+    private long hashChanges(int fromX, int toX, int fromY, int toY)
+    {
+        long changes = 0;
+
+        for(int y = fromY; y < toY; y++)
+        {
+            int row = index(0, y);
+
+            for(int x = current.mismatch(next, row+fromX, row+toX); x < row+toX; x = current.mismatch(next, x+1, row+toX))
+                changes ^= CycleDetector.key(x-row, y, current.get(x)) ^ CycleDetector.key(x-row, y, next.get(x));
+        }
+
+        return changes;
+    }
+
+    /**
+     * activates every tile that changed in the last generation, as well as the tiles around it
+     */
+    private void updateActiveTiles()
+    {
+        Arrays.fill(active, false);
+
+        for(int tileY = 0; tileY < tilesY; tileY++)
+        {
+            for(int tileX = 0; tileX < tilesX; tileX++)
+            {
+                if(!changed[tileY*tilesX + tileX])
+                    continue;
+
+                activateAround(tileX*tile, Math.min(width, (tileX+1)*tile),
+                               tileY*tile, Math.min(height, (tileY+1)*tile));
+            }
+        }
+
+        Arrays.fill(changed, false);
+    }
+
+    /**
+     * activates every tile with a cell that has one of the given cells as its neighbour,
+     * including the ones on the other side of a wrapping boundary
+     */
+    private void activateAround(int fromX, int toX, int fromY, int toY)
+    {
+        int columns = tilesAround(fromX, toX, width, columnsAround);
+        int rows = tilesAround(fromY, toY, height, rowsAround);
+
+        for(int row = 0; row < rows; row++)
+            for(int column = 0; column < columns; column++)
+                active[rowsAround[row]*tilesX + columnsAround[column]] = true;
+    }
+
+    /**
+     * @param tiles receives the tiles along one axis within the halo of the given cells
+     * @return how many tiles were found
+     */
+    private int tilesAround(int from, int to, int size, int[] tiles)
+    {
+        int count = 0;
+
+        for(int i = from-halo; i < to+halo; i++)
+        {
+            int mapped = boundary.map(i, size);
+
+            //neighbouring cells are mostly in the same tile
+            if(mapped >= 0 && (count == 0 || tiles[count-1] != mapped/tile))
+                tiles[count++] = mapped/tile;
+        }
+
+        return count;
+    }
+
+    /**
+     * Steps all {@link #bands} at once. It is reused every generation,
+     * so a parallel step doesn't allocate tasks either.
+     */
+    private final class AllBands extends RecursiveAction
+    {
+        private static final long serialVersionUID = 1L;
+
+        @Override
+        protected void compute()
+        {
+            for(Band band : bands)
+                band.reinitialize();
+
+            invokeAll(bands);
+        }
+    }
+
+    /**
+     * A slice of rows stepped by a single thread. Every band has its own
+     * flyweight cell and {@link Neighbourhood}, since they are not thread safe.
+     */
+    private final class Band extends RecursiveAction
+    {
+        private static final long serialVersionUID = 1L;
+
+        private final int fromY;
+        private final int toY;
+        private final Cell cell;
+        private final Neighbourhood neighbourhood;
+        private int evaluated;
+        //how the hash changes with the rows of the band
+        private long hash;
+
+        Band(int fromY, int toY)
+        {
+            this.fromY = fromY;
+            this.toY = toY;
+            this.cell = newCell();
+            this.neighbourhood = new Neighbourhood(Grid.this);
+        }
+
+        @Override
+        protected void compute()
+        {
+            evaluated = step(cell, neighbourhood, fromY, toY);
+            hash = hashing ? hashChanges(fromY, toY) : 0;
+        }
     }
 }
@@ -0,0 +1,302 @@
+package io.github.keheck;
+
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.AtomicMoveNotSupportedException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardCopyOption;
+import java.nio.file.StandardOpenOption;
+
+/**
+ * Saves a {@link Grid} to a file and loads it back, e.g. to checkpoint a long
+ * {@link Simulation} or to start the window from a saved state (see
+ * {@link Initializer#setInitialState(Path)}). A file can be loaded by every
+ * {@link Engine}, since only the states are saved.
+ *
+ * The file starts with a header (all numbers big-endian):
+ * <pre>
+ * int    magic, "CAGR"
+ * short  version, 1
+ * byte   bits per state
+ * byte   0
+ * int    number of states (the ones of the cell class, or more if a cell was in a higher state)
+ * int    width
+ * int    height
+ * long   generation
+ * short  length + UTF-8 bytes, the name of the cell class
+ * short  length + UTF-8 bytes, the rule of the cell class (see {@link Rule#toString()}), or nothing
+ * </pre>
+ * followed by the states of all cells, row by row. Every state takes the fewest bits
+ * that hold {@code states-1}; they are packed without gaps, starting at the lowest
+ * bit of a byte.
+ *
+ * The states are read and written through {@link MappedByteBuffer}s, one chunk
+ * of the file after the other, so no copy of the whole grid is made on the heap.
+ * A grid is saved into a file next to the target first, which then replaces the target,
+ * so a save that fails never destroys a file saved before.
+ */
+
+final class GridFile
+{
+    static final int MAGIC = 0x43414752;
+    static final short VERSION = 1;
+
+    //how much of the file is mapped at once
+    private static final int CHUNK = 1 << 28;
+
+    private GridFile() {}
+
+    /**
+     * @param path where to save the grid, an existing file is replaced once the grid was saved completely
+     * @throws IllegalArgumentException if a cell is in a negative state (nothing is written then)
+     */
+    static void save(Grid grid, Path path) throws IOException
+    {
+        Cell cell = grid.newCell();
+        Rule rule = cell.getRule();
+        //a cell may end up in a state above getStates(), the bits have to hold it as well
+        int highest = highestState(grid, cell.getStates()-1);
+        int bits = Math.max(1, 32 - Integer.numberOfLeadingZeros(highest));
+        byte[] name = cell.getClass().getName().getBytes(StandardCharsets.UTF_8);
+        byte[] description = (rule != null ? rule.toString() : "").getBytes(StandardCharsets.UTF_8);
+
+        ByteBuffer header = ByteBuffer.allocate(32 + name.length + 2 + description.length);
+        header.putInt(MAGIC).putShort(VERSION).put((byte)bits).put((byte)0);
+        header.putInt((int)Math.min(Integer.MAX_VALUE, highest + 1L)).putInt(grid.getWidth()).putInt(grid.getHeight()).putLong(grid.getGeneration());
+        header.putShort((short)name.length).put(name);
+        header.putShort((short)description.length).put(description);
+        header.flip();
+
+        long size = header.remaining() + ((long)grid.getWidth()*grid.getHeight()*bits + 7)/8;
+
+        Path target = path.toAbsolutePath();
+        Path temporary = target.resolveSibling(target.getFileName() + ".tmp");
+
+        try
+        {
+            try(FileChannel channel = FileChannel.open(temporary, StandardOpenOption.CREATE, StandardOpenOption.READ,
+                    StandardOpenOption.WRITE, StandardOpenOption.TRUNCATE_EXISTING))
+            {
+                Chunks chunks = new Chunks(channel, FileChannel.MapMode.READ_WRITE, header.remaining(), size);
+                long buffer = 0;
+                int buffered = 0;
+
+                while(header.hasRemaining())
+                    channel.write(header);
+
+                for(int y = 0; y < grid.getHeight(); y++)
+                {
+                    for(int x = 0; x < grid.getWidth(); x++)
+                    {
+                        buffer |= (long)grid.getState(x, y) << buffered;
+                        buffered += bits;
+
+                        for(; buffered >= 8; buffered -= 8, buffer >>>= 8)
+                            chunks.put((byte)buffer);
+                    }
+                }
+
+                if(buffered > 0)
+                    chunks.put((byte)buffer);
+            }
+
+            try
+            {
+                Files.move(temporary, target, StandardCopyOption.ATOMIC_MOVE, StandardCopyOption.REPLACE_EXISTING);
+            } catch (AtomicMoveNotSupportedException e)
+            {
+                Files.move(temporary, target, StandardCopyOption.REPLACE_EXISTING);
+            }
+        } finally
+        {
+            //only left if the save failed
+            Files.deleteIfExists(temporary);
+        }
+    }
+
+    /**
+     * @param highest the highest state the cells have at least
+     * @return the highest state any cell is in, but at least {@code highest}
+     * @throws IllegalArgumentException if a cell is in a negative state
+     */
+    private static int highestState(Grid grid, int highest)
+    {
+        for(int y = 0; y < grid.getHeight(); y++)
+        {
+            for(int x = 0; x < grid.getWidth(); x++)
+            {
+                int state = grid.getState(x, y);
+
+                if(state < 0)
+                    throw new IllegalArgumentException("The cell at (" + x + "|" + y + ") is in the negative state " + state);
+
+                highest = Math.max(highest, state);
+            }
+        }
+
+        return highest;
+    }
+
+    /**
+     * replaces the states of the grid with the saved ones and continues at the saved generation;
+     * an unbounded grid (see {@link Engine#CHUNKED}) loses the cells it doesn't show
+     * @throws IllegalArgumentException if the file doesn't fit the grid
+     */
+    static void load(Grid grid, Path path) throws IOException
+    {
+        try(FileChannel channel = FileChannel.open(path, StandardOpenOption.READ))
+        {
+            Header header = new Header(channel);
+            Cell cell = grid.newCell();
+            Rule rule = cell.getRule();
+
+            if(header.width != grid.getWidth() || header.height != grid.getHeight())
+                throw new IllegalArgumentException(path + " holds a grid of " + header.width + "x" + header.height +
+                                                   " cells, not " + grid.getWidth() + "x" + grid.getHeight());
+            //more states than the cell has are fine, as long as the grid can hold them
+            if(header.states > StateBuffer.capacity(cell.getStates()))
+                throw new IllegalArgumentException(path + " holds " + header.states + " states, a grid of " +
+                                                   cell.getClass().getName() + " only holds " + StateBuffer.capacity(cell.getStates()));
+            if(!header.cell.equals(cell.getClass().getName()) || !header.rule.equals(rule != null ? rule.toString() : ""))
+                System.err.println(path + " was saved by " + header.cell + ", it might follow another rule");
+
+            long size = header.offset + ((long)header.width*header.height*header.bits + 7)/8;
+
+            if(channel.size() < size)
+                throw new IllegalArgumentException(path + " is cut off");
+
+            //an unbounded grid would keep the cells outside the part that is overwritten
+            grid.resetGrid();
+
+            Chunks chunks = new Chunks(channel, FileChannel.MapMode.READ_ONLY, header.offset, size);
+            long mask = (1L << header.bits) - 1;
+            long buffer = 0;
+            int buffered = 0;
+
+            for(int y = 0; y < header.height; y++)
+            {
+                for(int x = 0; x < header.width; x++)
+                {
+                    for(; buffered < header.bits; buffered += 8)
+                        buffer |= (chunks.get() & 0xFFL) << buffered;
+
+                    grid.setState(x, y, (int)(buffer & mask));
+                    buffer >>>= header.bits;
+                    buffered -= header.bits;
+                }
+            }
+
+            grid.setGeneration(header.generation);
+            grid.invalidate();
+        }
+    }
+
+    /**
+     * The header of a saved grid
+     */
+    static final class Header
+    {
+        final int bits;
+        final int states;
+        final int width;
+        final int height;
+        final long generation;
+        final String cell;
+        final String rule;
+        //where the states start
+        final long offset;
+
+        /**
+         * reads the header from the start of the given file
+         */
+        Header(FileChannel channel) throws IOException
+        {
+            ByteBuffer header = channel.map(FileChannel.MapMode.READ_ONLY, 0, Math.min(channel.size(), 32 + 2*0xFFFF));
+
+            if(header.remaining() < 32 || header.getInt() != MAGIC)
+                throw new IllegalArgumentException("This isn't a saved grid");
+
+            short version = header.getShort();
+
+            if(version != VERSION)
+                throw new IllegalArgumentException("Version " + version + " of the format isn't supported");
+
+            this.bits = header.get();
+            header.get();
+            this.states = header.getInt();
+            this.width = header.getInt();
+            this.height = header.getInt();
+            this.generation = header.getLong();
+            this.cell = string(header);
+            this.rule = string(header);
+            this.offset = header.position();
+
+            if(bits < 1 || bits > 32 || width < 1 || height < 1)
+                throw new IllegalArgumentException("The header of the saved grid is broken");
+        }
+
+        /**
+         * reads the header of the given file
+         */
+        static Header read(Path path) throws IOException
+        {
+            try(FileChannel channel = FileChannel.open(path, StandardOpenOption.READ))
+            {
+                return new Header(channel);
+            }
+        }
+
+        private static String string(ByteBuffer header)
+        {
+            byte[] bytes = new byte[header.getShort() & 0xFFFF];
+            header.get(bytes);
+            return new String(bytes, StandardCharsets.UTF_8);
+        }
+    }
+
+    /**
+     * Maps a region of a file one {@link #CHUNK} after the other while it's read or written
+     */
+    private static final class Chunks
+    {
+        private final FileChannel channel;
+        private final FileChannel.MapMode mode;
+        private final long end;
+        private long position;
+        private MappedByteBuffer buffer;
+
+        Chunks(FileChannel channel, FileChannel.MapMode mode, long start, long end)
+        {
+            this.channel = channel;
+            this.mode = mode;
+            this.position = start;
+            this.end = end;
+        }
+
+        void put(byte value) throws IOException
+        {
+            next().put(value);
+        }
+
+        byte get() throws IOException
+        {
+            return next().get();
+        }
+
+        private MappedByteBuffer next() throws IOException
+        {
+            if(buffer == null || !buffer.hasRemaining())
+            {
+                int size = (int)Math.min(CHUNK, end-position);
+                buffer = channel.map(mode, position, size);
+                position += size;
+            }
+
+            return buffer;
+        }
+    }
+}
@@ -0,0 +1,342 @@
+package io.github.keheck;
+
+import processing.core.PConstants;
+import processing.core.PImage;
+import processing.core.PVector;
+
+import java.awt.*;
+
+import static io.github.keheck.CellularAutomatonAPI.cam;
+import static io.github.keheck.CellularAutomatonAPI.instance;
+
+/**
+ * Draws a {@link Grid} onto the {@link CellularAutomatonAPI} window
+ * and maps mouse positions back to cells.
+ *
+ * The cells are drawn from a {@link Snapshot}, so the grid can be stepped meanwhile.
+ * The colors of every state are queried once and kept in a palette, unless the cells
+ * declare {@link Channel}s: then the fill color is queried for every cell with the
+ * channels of the snapshot, since it may depend on them. A cell may end up in a state
+ * above {@link Cell#getStates()} (the default ruleset of {@link Cell} does), the colors
+ * of those are queried whenever they are drawn. The cells
+ * are written into an image with one pixel per cell, which is scaled up when it's
+ * drawn, and the image is only filled again after the grid or the camera changed
+ * (see {@link Grid#getModifications()}).
+ *
+ * Only the cells inside the window make it into the image. When the camera is zoomed
+ * out so far that a cell is smaller than a pixel, a pixel of the image stands for a
+ * block of cells instead (see {@link Downsampling}), so the image is never bigger than
+ * the window and the cost of a frame doesn't grow with the grid.
+ */
+
+final class GridRenderer
+{
+    //at most SAMPLES*SAMPLES cells of a block are read for its pixel
+    private static final int SAMPLES = 4;
+
+    private final Grid grid;
+    private final int cellSize;
+    private final Downsampling downsampling;
+    //the flyweight the colors are queried from
+    private final Cell cell;
+    //the ARGB colors of every state
+    private final int[] fills;
+    private final int[] strokes;
+    //whether every state has the same stroke color, so the strokes can be drawn as lines
+    //(the states above getStates() are assumed to have it as well)
+    private final boolean uniformStroke;
+    //how often every state was sampled in the current block
+    private final int[] counts;
+    private PImage image;
+    //the snapshot that is drawn
+    private Snapshot frame;
+    //the cell in the top left corner of the image and the size of the blocks it was filled with
+    private int imageX;
+    private int imageY;
+    private int imageBlock;
+    //what the last frame was drawn with
+    private long modifications = -1;
+    private float lastX;
+    private float lastY;
+    private double lastScale;
+    private boolean lastStroke;
+
+    GridRenderer(Grid grid, int cellSize)
+    {
+        this.grid = grid;
+        this.cellSize = cellSize;
+        this.downsampling = Settings.downsampling;
+
+        this.cell = grid.newCell();
+        this.fills = new int[cell.getStates()];
+        this.strokes = new int[cell.getStates()];
+        this.counts = new int[cell.getStates()];
+
+        for(int state = 0; state < fills.length; state++)
+        {
+            cell.setState(state);
+
+            //queried for every cell instead
+            if(!grid.hasChannels())
+                fills[state] = cell.getFillColor().getRGB();
+
+            strokes[state] = cell.getStrokeColor().getRGB();
+        }
+
+        boolean uniformStroke = true;
+
+        for(int stroke : strokes)
+            uniformStroke &= stroke == strokes[0];
+
+        this.uniformStroke = uniformStroke;
+    }
+
+    /**
+     * @return whether the snapshot, the camera or the strokes changed since the last {@link #show(Snapshot)}
+     */
+    boolean needsRepaint(Snapshot frame)
+    {
+        return modifications != frame.getModifications() || lastX != cam.pos.x || lastY != cam.pos.y ||
+               lastScale != cam.scale || lastStroke != instance.withStroke;
+    }
+
+    /**
+     * Displays every cell inside the window with the color representing the state defined in
+     * {@link Cell#getFillColor()} with the stroke color defined in
+     * {@link Cell#getStrokeColor()} when {@link CellularAutomatonAPI#withStroke} is true.
+     * @param frame the states of the cells
+     */
+    void show(Snapshot frame)
+    {
+        this.frame = frame;
+
+        //how many cells along each axis end up in one pixel
+        int block = Math.max(1, (int)Math.ceil(1/(cellSize*cam.scale)));
+        int fromX = firstCell(cam.toWorldX(0), block, grid.getWidth());
+        int fromY = firstCell(cam.toWorldY(0), block, grid.getHeight());
+        int toX = lastCell(cam.toWorldX(instance.g.width), grid.getWidth());
+        int toY = lastCell(cam.toWorldY(instance.g.height), grid.getHeight());
+
+        if(fromX < toX && fromY < toY)
+        {
+            int columns = (toX-fromX + block-1)/block;
+            int rows = (toY-fromY + block-1)/block;
+            boolean moved = fromX != imageX || fromY != imageY || block != imageBlock;
+
+            if(image == null || image.width != columns || image.height != rows)
+            {
+                image = instance.createImage(columns, rows, PConstants.ARGB);
+                moved = true;
+            }
+
+            if(moved || modifications != frame.getModifications())
+                fillImage(fromX, toX, fromY, toY, block);
+
+            instance.image(image, fromX*cellSize, fromY*cellSize, (toX-fromX)*cellSize, (toY-fromY)*cellSize);
+
+            //below a pixel per cell, the strokes would cover everything
+            if(instance.withStroke && block == 1)
+                showStrokes(fromX, toX, fromY, toY);
+        }
+
+        modifications = frame.getModifications();
+        lastX = cam.pos.x;
+        lastY = cam.pos.y;
+        lastScale = cam.scale;
+        lastStroke = instance.withStroke;
+    }
+
+    /**
+     * @param world a coordinate of the window in the coordinates the grid is drawn in (see {@link Camera#toWorldX(double)})
+     * @return the first cell along that axis that is visible, aligned to the blocks
+     */
+    private int firstCell(double world, int block, int size)
+    {
+        int cell = (int)Math.max(0, Math.min(size, Math.floor(world/cellSize)));
+        return cell/block*block;
+    }
+
+    /**
+     * @return the cell behind the last visible one along that axis
+     */
+    private int lastCell(double world, int size)
+    {
+        return (int)Math.max(0, Math.min(size, Math.ceil(world/cellSize)));
+    }
+
+    private void fillImage(int fromX, int toX, int fromY, int toY, int block)
+    {
+        image.loadPixels();
+
+        for(int row = 0; row < image.height; row++)
+        {
+            int y = fromY + row*block;
+
+            for(int column = 0; column < image.width; column++)
+            {
+                int x = fromX + column*block;
+
+                if(block == 1)
+                    image.pixels[row*image.width + column] = fill(x, y);
+                else
+                    image.pixels[row*image.width + column] = aggregate(x, y, Math.min(block, toX-x), Math.min(block, toY-y));
+            }
+        }
+
+        image.updatePixels();
+        imageX = fromX;
+        imageY = fromY;
+        imageBlock = block;
+    }
+
+    /**
+     * @return the color of the block of {@code width*height} cells starting at (x|y)
+     */
+    private int aggregate(int x, int y, int width, int height)
+    {
+        int samplesX = Math.min(SAMPLES, width);
+        int samplesY = Math.min(SAMPLES, height);
+
+        if(downsampling == Downsampling.MAJORITY)
+        {
+            //-1 until a sample in one of the counted states was found
+            int majority = -1;
+            //a cell in the majority state, to take its color
+            int majorityX = x;
+            int majorityY = y;
+
+            for(int i = 0; i < samplesY; i++)
+            {
+                for(int j = 0; j < samplesX; j++)
+                {
+                    int sampleX = x + j*width/samplesX;
+                    int sampleY = y + i*height/samplesY;
+                    int state = frame.getState(sampleX, sampleY);
+
+                    //the states above getStates() aren't counted
+                    if(state < counts.length && ++counts[state] > (majority < 0 ? 0 : counts[majority]))
+                    {
+                        majority = state;
+                        majorityX = sampleX;
+                        majorityY = sampleY;
+                    }
+                }
+            }
+
+            //reset only the counts that were used
+            for(int i = 0; i < samplesY; i++)
+            {
+                for(int j = 0; j < samplesX; j++)
+                {
+                    int state = frame.getState(x + j*width/samplesX, y + i*height/samplesY);
+
+                    if(state < counts.length)
+                        counts[state] = 0;
+                }
+            }
+
+            return fill(majorityX, majorityY);
+        }
+
+        int alpha = 0, red = 0, green = 0, blue = 0;
+
+        for(int i = 0; i < samplesY; i++)
+        {
+            for(int j = 0; j < samplesX; j++)
+            {
+                int color = fill(x + j*width/samplesX, y + i*height/samplesY);
+                alpha += color >>> 24;
+                red += color >> 16 & 0xFF;
+                green += color >> 8 & 0xFF;
+                blue += color & 0xFF;
+            }
+        }
+
+        int samples = samplesX*samplesY;
+        return alpha/samples << 24 | red/samples << 16 | green/samples << 8 | blue/samples;
+    }
+
+    /**
+     * @return the ARGB fill color of the cell at (x|y) of the snapshot
+     */
+    private int fill(int x, int y)
+    {
+        int state = frame.getState(x, y);
+        Channels channels = frame.getChannels();
+
+        if(channels == null && state < fills.length)
+            return fills[state];
+
+        cell.setState(state);
+        cell.bindChannels(channels, null);
+        cell.setIndex(y*frame.getWidth() + x);
+        return cell.getFillColor().getRGB();
+    }
+
+    /**
+     * @return the ARGB stroke color of the given state
+     */
+    private int stroke(int state)
+    {
+        if(state < strokes.length)
+            return strokes[state];
+
+        cell.setState(state);
+        return cell.getStrokeColor().getRGB();
+    }
+
+    private void showStrokes(int fromX, int toX, int fromY, int toY)
+    {
+        if(uniformStroke)
+        {
+            instance.stroke(strokes[0]);
+
+            for(int x = fromX; x <= toX; x++)
+                instance.line(x*cellSize, fromY*cellSize, x*cellSize, toY*cellSize);
+            for(int y = fromY; y <= toY; y++)
+                instance.line(fromX*cellSize, y*cellSize, toX*cellSize, y*cellSize);
+        }
+        else
+        {
+            //the outline depends on the state, so every cell gets its own
+            instance.noFill();
+
+            for(int y = fromY; y < toY; y++)
+            {
+                for(int x = fromX; x < toX; x++)
+                {
+                    instance.stroke(stroke(frame.getState(x, y)));
+                    instance.rect(x*cellSize, y*cellSize, cellSize, cellSize);
+                }
+            }
+        }
+    }
+
+    /**
+     * converts the mouse position on the screen to grid coordinates
+     * depending on:
+     * <ul>
+     *     <li>the current scale</li>
+     *     <li>the current camera position</li>
+     * </ul>
+     * @param relMouseLoc the location of the mouse relative to the window location
+     * @return a {@code PVector} representing the x and y index of the cell
+     */
+    PVector getBoardCoords(Point relMouseLoc)
+    {
+        if(cam.pos.x == 0 && cam.pos.y == 0 && cam.scale == 1)
+        {
+            double cellSize = this.cellSize;
+
+            double scaledX = relMouseLoc.getX()/cellSize-0.5;
+            double scaledY = relMouseLoc.getY()/cellSize-0.5;
+
+            return new PVector((float)Math.round(scaledX), (float)Math.round(scaledY));
+        }
+        else
+        {
+            System.out.println("Please reset the board first! (I'm too stupid to get the formular right)");
+            return new PVector(0, 0);
+        }
+    }
+}
@@ -0,0 +1,520 @@
+package io.github.keheck;
+
+/**
+ * An unbounded universe for {@link OuterTotalisticRule}s, stepped with Bill Gosper's HashLife
+ * algorithm (see {@link Engine#HASHLIFE}).
+ *
+ * The universe is a quadtree: a node of level L is a square of 2^L x 2^L cells made up
+ * of four nodes of level L-1, a node of level 0 is a single cell. Every node is
+ * hash-consed, so equal squares are the same object no matter where or when they
+ * appear. For a node of level L, {@link #result(Node, int)} computes its center
+ * (a node of level L-1) 2^j generations later and remembers it, so every square
+ * is only ever computed once per step size.
+ *
+ * The memoized nodes are bounded by {@link #maxNodes}: when there are more of
+ * them before a step, everything that isn't part of the current universe is dropped.
+ *
+ * The root is centered at (0|0), so it covers -2^(L-1) to 2^(L-1) on both axes.
+ */
+
+final class HashLife
+{
+    private static final Node DEAD = new Node(0);
+    private static final Node ALIVE = new Node(1);
+
+    private final int maxNodes;
+    //maps a 4x4 square (row-major, bit 0 is top left) to its center one generation later
+    private final byte[] squares;
+    private Node[] buckets;
+    private int nodes;
+    private Node[] empty;
+    private Node root;
+
+    /**
+     * @param rule the rule the universe follows
+     * @param maxNodes how many nodes may be kept before the unused ones are dropped
+     */
+    HashLife(OuterTotalisticRule rule, int maxNodes)
+    {
+        this.maxNodes = maxNodes;
+        this.squares = new byte[1 << 16];
+        this.buckets = new Node[1 << 10];
+        this.empty = new Node[64];
+        this.root = empty(3);
+
+        for(int square = 0; square < squares.length; square++)
+        {
+            int center = 0;
+
+            for(int i = 0; i < 4; i++)
+            {
+                int x = 1 + (i & 1);
+                int y = 1 + (i >> 1);
+                int neighbours = 0;
+
+                for(int dy = -1; dy <= 1; dy++)
+                    for(int dx = -1; dx <= 1; dx++)
+                        if(!(dx == 0 && dy == 0))
+                            neighbours += square >> ((y+dy)*4 + x+dx) & 1;
+
+                center |= rule.next(square >> (y*4 + x) & 1, neighbours) << i;
+            }
+
+            squares[square] = (byte)center;
+        }
+    }
+
+    /**
+     * @return how many cells are alive in the whole universe
+     */
+    long getPopulation() { return root.population; }
+
+    /**
+     * @return the state (0 or 1) of the cell at (x|y)
+     */
+    int get(long x, long y)
+    {
+        long half = 1L << (root.level-1);
+
+        if(x < -half || y < -half || x >= half || y >= half)
+            return 0;
+
+        Node node = root;
+        x += half;
+        y += half;
+
+        while(node.level > 0)
+        {
+            half = 1L << (node.level-1);
+            boolean east = x >= half;
+            boolean south = y >= half;
+
+            node = south ? (east ? node.se : node.sw) : (east ? node.ne : node.nw);
+
+            if(east) x -= half;
+            if(south) y -= half;
+        }
+
+        return node == ALIVE ? 1 : 0;
+    }
+
+    /**
+     * sets the cell at (x|y) alive (state != 0) or dead (state == 0)
+     */
+    void set(long x, long y, int state)
+    {
+        while(x < -(1L << (root.level-1)) || y < -(1L << (root.level-1)) ||
+              x >= 1L << (root.level-1) || y >= 1L << (root.level-1))
+            expand();
+
+        long half = 1L << (root.level-1);
+        root = set(root, x+half, y+half, state != 0 ? ALIVE : DEAD);
+    }
+
+    private Node set(Node node, long x, long y, Node cell)
+    {
+        if(node.level == 0)
+            return cell;
+
+        long half = 1L << (node.level-1);
+
+        if(y < half)
+        {
+            if(x < half)
+                return node(set(node.nw, x, y, cell), node.ne, node.sw, node.se);
+            else
+                return node(node.nw, set(node.ne, x-half, y, cell), node.sw, node.se);
+        }
+        else
+        {
+            if(x < half)
+                return node(node.nw, node.ne, set(node.sw, x, y-half, cell), node.se);
+            else
+                return node(node.nw, node.ne, node.sw, set(node.se, x-half, y-half, cell));
+        }
+    }
+
+    /**
+     * kills every cell of the universe
+     */
+    void clear() { root = empty(3); }
+
+    /**
+     * replaces the universe with the given states, placed between (0|0) and (width|height)
+     * @param origin the index of the cell at (0|0)
+     * @param stride the index distance between two rows
+     */
+    void load(StateBuffer states, int width, int height, int origin, int stride)
+    {
+        int level = 3;
+
+        while(1L << (level-1) < Math.max(width, height))
+            level++;
+
+        long half = 1L << (level-1);
+        root = build(states, width, height, origin, stride, level, -half, -half);
+    }
+
+    private Node build(StateBuffer states, int width, int height, int origin, int stride, int level, long x, long y)
+    {
+        long size = 1L << level;
+
+        if(x >= width || y >= height || x+size <= 0 || y+size <= 0)
+            return empty(level);
+
+        if(level == 0)
+            return states.get(origin + (int)y*stride + (int)x) != 0 ? ALIVE : DEAD;
+
+        long half = size >> 1;
+
+        return node(build(states, width, height, origin, stride, level-1, x, y),
+                    build(states, width, height, origin, stride, level-1, x+half, y),
+                    build(states, width, height, origin, stride, level-1, x, y+half),
+                    build(states, width, height, origin, stride, level-1, x+half, y+half));
+    }
+
+    /**
+     * writes the part of the universe between (0|0) and (width|height) into the given states
+     * @param origin the index of the cell at (0|0)
+     * @param stride the index distance between two rows
+     */
+    void store(StateBuffer states, int width, int height, int origin, int stride)
+    {
+        long half = 1L << (root.level-1);
+
+        states.fill(0);
+        store(root, -half, -half, states, width, height, origin, stride);
+    }
+
+    private void store(Node node, long x, long y, StateBuffer states, int width, int height, int origin, int stride)
+    {
+        long size = 1L << node.level;
+
+        if(node.population == 0 || x >= width || y >= height || x+size <= 0 || y+size <= 0)
+            return;
+
+        if(node.level == 0)
+        {
+            states.set(origin + (int)y*stride + (int)x, 1);
+            return;
+        }
+
+        long half = size >> 1;
+
+        store(node.nw, x, y, states, width, height, origin, stride);
+        store(node.ne, x+half, y, states, width, height, origin, stride);
+        store(node.sw, x, y+half, states, width, height, origin, stride);
+        store(node.se, x+half, y+half, states, width, height, origin, stride);
+    }
+
+    /**
+     * looks at every living cell, so it takes as long as writing them out
+     * @return the hash of the whole universe (see {@link CycleDetector}), with the cells at the
+     *         same coordinates as {@link #load(StateBuffer, int, int, int, int)} put them
+     */
+    long hash()
+    {
+        long half = 1L << (root.level-1);
+        return hash(root, -half, -half);
+    }
+
+    private static long hash(Node node, long x, long y)
+    {
+        if(node.population == 0)
+            return 0;
+        if(node.level == 0)
+            return CycleDetector.key(x, y, 1);
+
+        long half = 1L << (node.level-1);
+
+        return hash(node.nw, x, y) ^ hash(node.ne, x+half, y) ^ hash(node.sw, x, y+half) ^ hash(node.se, x+half, y+half);
+    }
+
+    /**
+     * advances the universe by the given number of generations, taking
+     * the biggest power of two steps possible
+     */
+    void step(long generations)
+    {
+        for(int j = 62; j >= 0; j--)
+            if((generations >> j & 1) != 0)
+                step(j);
+    }
+
+    /**
+     * advances the universe by 2^j generations at once
+     */
+    private void step(int j)
+    {
+        if(nodes > maxNodes)
+            collect();
+
+        //the pattern grows by at most one cell per generation, so it has to be
+        //at least 2^j cells away from the border of the result
+        while(root.level < j+3 || !isCentered(root))
+            expand();
+
+        root = result(root, j);
+    }
+
+    /**
+     * @return whether every living cell is within the center half of the node
+     */
+    private boolean isCentered(Node node)
+    {
+        return node.nw.se.se.population + node.ne.sw.sw.population +
+               node.sw.ne.ne.population + node.se.nw.nw.population == node.population;
+    }
+
+    /**
+     * doubles the size of the universe, keeping it centered at (0|0)
+     */
+    private void expand()
+    {
+        Node border = empty(root.level-1);
+
+        root = node(node(border, border, border, root.nw),
+                    node(border, border, root.ne, border),
+                    node(border, root.sw, border, border),
+                    node(root.se, border, border, border));
+    }
+
+    /**
+     * @param node a node of level L >= 2
+     * @param j the step size, at most L-2
+     * @return the center of the node (level L-1) 2^j generations later
+     */
+    private Node result(Node node, int j)
+    {
+        if(node.population == 0)
+            return empty(node.level-1);
+
+        if(node.result != null && node.resultStep == j)
+            return node.result;
+
+        Node result;
+
+        if(node.level == 2)
+            result = square(node);
+        else
+        {
+            //the nine overlapping sub-squares of level L-1
+            Node n00 = node.nw;
+            Node n01 = horizontal(node.nw, node.ne);
+            Node n02 = node.ne;
+            Node n10 = vertical(node.nw, node.sw);
+            Node n11 = center(node);
+            Node n12 = vertical(node.ne, node.se);
+            Node n20 = node.sw;
+            Node n21 = horizontal(node.sw, node.se);
+            Node n22 = node.se;
+
+            if(j == node.level-2)
+            {
+                //two rounds of 2^(j-1) generations each
+                int k = j-1;
+                Node r00 = result(n00, k);
+                Node r01 = result(n01, k);
+                Node r02 = result(n02, k);
+                Node r10 = result(n10, k);
+                Node r11 = result(n11, k);
+                Node r12 = result(n12, k);
+                Node r20 = result(n20, k);
+                Node r21 = result(n21, k);
+                Node r22 = result(n22, k);
+
+                result = node(result(node(r00, r01, r10, r11), k),
+                              result(node(r01, r02, r11, r12), k),
+                              result(node(r10, r11, r20, r21), k),
+                              result(node(r11, r12, r21, r22), k));
+            }
+            else
+            {
+                //one round of 2^j generations, the second round only takes the centers
+                Node r00 = result(n00, j);
+                Node r01 = result(n01, j);
+                Node r02 = result(n02, j);
+                Node r10 = result(n10, j);
+                Node r11 = result(n11, j);
+                Node r12 = result(n12, j);
+                Node r20 = result(n20, j);
+                Node r21 = result(n21, j);
+                Node r22 = result(n22, j);
+
+                result = node(center(node(r00, r01, r10, r11)),
+                              center(node(r01, r02, r11, r12)),
+                              center(node(r10, r11, r20, r21)),
+                              center(node(r11, r12, r21, r22)));
+            }
+        }
+
+        node.result = result;
+        node.resultStep = j;
+        return result;
+    }
+
+    /**
+     * @return the center of a 4x4 node one generation later
+     */
+    private Node square(Node node)
+    {
+        int square = bits(node.nw, 0) | bits(node.ne, 2) | bits(node.sw, 8) | bits(node.se, 10);
+        int center = squares[square];
+
+        return node((center & 1) != 0 ? ALIVE : DEAD,
+                    (center & 2) != 0 ? ALIVE : DEAD,
+                    (center & 4) != 0 ? ALIVE : DEAD,
+                    (center & 8) != 0 ? ALIVE : DEAD);
+    }
+
+    /**
+     * @return the cells of a 2x2 node, shifted into a 4x4 square
+     */
+    private static int bits(Node quarter, int shift)
+    {
+        return (int)(quarter.nw.population << shift | quarter.ne.population << (shift+1) |
+                     quarter.sw.population << (shift+4) | quarter.se.population << (shift+5));
+    }
+
+    private Node horizontal(Node west, Node east) { return node(west.ne, east.nw, west.se, east.sw); }
+
+    private Node vertical(Node north, Node south) { return node(north.sw, north.se, south.nw, south.ne); }
+
+    private Node center(Node node) { return node(node.nw.se, node.ne.sw, node.sw.ne, node.se.nw); }
+
+    private Node empty(int level)
+    {
+        if(level == 0)
+            return DEAD;
+
+        if(empty[level] == null)
+        {
+            Node quarter = empty(level-1);
+            empty[level] = node(quarter, quarter, quarter, quarter);
+        }
+
+        return empty[level];
+    }
+
+    /**
+     * @return the one node made up of the given quarters
+     */
+    private Node node(Node nw, Node ne, Node sw, Node se)
+    {
+        int hash = hash(nw, ne, sw, se);
+        int bucket = hash & (buckets.length-1);
+
+        for(Node node = buckets[bucket]; node != null; node = node.next)
+            if(node.nw == nw && node.ne == ne && node.sw == sw && node.se == se)
+                return node;
+
+        Node node = new Node(nw, ne, sw, se, hash);
+        node.next = buckets[bucket];
+        buckets[bucket] = node;
+
+        if(++nodes > buckets.length - (buckets.length >> 2))
+            resize(buckets.length << 1);
+
+        return node;
+    }
+
+    private static int hash(Node nw, Node ne, Node sw, Node se)
+    {
+        int hash = nw.hash;
+        hash = hash*0x9E3779B1 + ne.hash;
+        hash = hash*0x9E3779B1 + sw.hash;
+        hash = hash*0x9E3779B1 + se.hash;
+        return hash ^ (hash >>> 16);
+    }
+
+    private void resize(int size)
+    {
+        Node[] old = buckets;
+        buckets = new Node[size];
+
+        for(Node node : old)
+        {
+            while(node != null)
+            {
+                Node next = node.next;
+                int bucket = node.hash & (size-1);
+                node.next = buckets[bucket];
+                buckets[bucket] = node;
+                node = next;
+            }
+        }
+    }
+
+    /**
+     * drops every node (and every memoized result) that isn't part of the current universe
+     */
+    private void collect()
+    {
+        buckets = new Node[buckets.length];
+        nodes = 0;
+        empty = new Node[64];
+        keep(root);
+    }
+
+    private void keep(Node node)
+    {
+        if(node.level == 0)
+            return;
+
+        int bucket = node.hash & (buckets.length-1);
+
+        for(Node kept = buckets[bucket]; kept != null; kept = kept.next)
+            if(kept == node)
+                return;
+
+        node.result = null;
+        node.next = buckets[bucket];
+        buckets[bucket] = node;
+        nodes++;
+
+        keep(node.nw);
+        keep(node.ne);
+        keep(node.sw);
+        keep(node.se);
+    }
+
+    private static final class Node
+    {
+        private final int level;
+        private final Node nw;
+        private final Node ne;
+        private final Node sw;
+        private final Node se;
+        private final long population;
+        private final int hash;
+        //the next node in the same bucket
+        private Node next;
+        private Node result;
+        private int resultStep;
+
+        /**
+         * creates a single cell
+         */
+        Node(int population)
+        {
+            this.level = 0;
+            this.nw = null;
+            this.ne = null;
+            this.sw = null;
+            this.se = null;
+            this.population = population;
+            this.hash = population;
+        }
+
+        Node(Node nw, Node ne, Node sw, Node se, int hash)
+        {
+            this.level = nw.level+1;
+            this.nw = nw;
+            this.ne = ne;
+            this.sw = sw;
+            this.se = se;
+            this.population = nw.population + ne.population + sw.population + se.population;
+            this.hash = hash;
+        }
+    }
+}
@@ -0,0 +1,95 @@
+package io.github.keheck;
+
+import java.util.Arrays;
+
+/**
+ * Counts how often durations (or any other positive values) occur, in the manner of
+ * HdrHistogram: values below {@link #EXACT} get a bucket each, above that every power of two
+ * is split into {@code EXACT/2} buckets, so every value is kept to about 1.5% of its size
+ * with a fixed number of buckets (about 30 KB) for the whole range of a long.
+ *
+ * Recording takes a lock, so it can be read from another thread; that is cheap as long as
+ * it's only done once per generation or frame.
+ */
+
+final class Histogram
+{
+    //values below this are counted exactly
+    private static final int EXACT = 128;
+    private static final int HALF = EXACT/2;
+    //the number of bits below the highest one that pick the bucket inside a power of two
+    private static final int PRECISION = Integer.numberOfTrailingZeros(HALF);
+
+    private final long[] counts = new long[EXACT + (63-PRECISION)*HALF];
+    private long count;
+    private long sum;
+    private long max;
+
+    synchronized void record(long value)
+    {
+        value = Math.max(value, 0);
+        counts[bucket(value)]++;
+        count++;
+        sum += value;
+        max = Math.max(max, value);
+    }
+
+    synchronized void reset()
+    {
+        Arrays.fill(counts, 0);
+        count = 0;
+        sum = 0;
+        max = 0;
+    }
+
+    synchronized long getCount() { return count; }
+
+    synchronized long getMax() { return max; }
+
+    synchronized double getMean() { return count > 0 ? (double)sum/count : 0; }
+
+    /**
+     * @param percentile between 0 and 100
+     * @return the highest value that counts as the same as the value at the given percentile, or 0 without values
+     */
+    synchronized long getPercentile(double percentile)
+    {
+        if(count == 0)
+            return 0;
+
+        long rank = Math.max(1, (long)Math.ceil(percentile/100 * count));
+        long seen = 0;
+
+        for(int bucket = 0; bucket < counts.length; bucket++)
+        {
+            seen += counts[bucket];
+
+            if(seen >= rank)
+                return Math.min(highest(bucket), max);
+        }
+
+        return max;
+    }
+
+    private static int bucket(long value)
+    {
+        if(value < EXACT)
+            return (int)value;
+
+        int shift = 63 - Long.numberOfLeadingZeros(value) - PRECISION;
+        return EXACT + (shift-1)*HALF + (int)(value >>> shift) - HALF;
+    }
+
+    /**
+     * @return the biggest value that ends up in the bucket
+     */
+    private static long highest(int bucket)
+    {
+        if(bucket < EXACT)
+            return bucket;
+
+        int shift = (bucket-EXACT)/HALF + 1;
+        long lowest = (long)((bucket-EXACT) % HALF + HALF) << shift;
+        return lowest + (1L << shift) - 1;
+    }
+}
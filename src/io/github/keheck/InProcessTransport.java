@@ -0,0 +1,113 @@
+package io.github.keheck;
+
+import java.io.IOException;
+import java.io.InterruptedIOException;
+import java.nio.ByteBuffer;
+import java.util.concurrent.ArrayBlockingQueue;
+import java.util.concurrent.BlockingQueue;
+import java.util.concurrent.LinkedBlockingQueue;
+
+/**
+ * A {@link Transport} between workers running on threads of the same process, e.g. to try out
+ * a {@link Partition} or to split a grid between cores without sockets. The messages are
+ * copied into buffers that are handed through a queue and reused once they were received.
+ */
+
+public final class InProcessTransport implements Transport
+{
+    //how many buffers a link keeps for reuse
+    private static final int SPARE = 4;
+
+    private final int rank;
+    //links[from][to]
+    private final Link[][] links;
+
+    private InProcessTransport(int rank, Link[][] links)
+    {
+        this.rank = rank;
+        this.links = links;
+    }
+
+    /**
+     * @param workers how many workers there are
+     * @return a transport for every worker, the one at index i is for the worker with rank i
+     */
+    public static InProcessTransport[] create(int workers)
+    {
+        if(workers < 1)
+            throw new IllegalArgumentException("There has to be at least one worker");
+
+        Link[][] links = new Link[workers][workers];
+
+        for(int from = 0; from < workers; from++)
+            for(int to = 0; to < workers; to++)
+                links[from][to] = new Link();
+
+        InProcessTransport[] transports = new InProcessTransport[workers];
+
+        for(int rank = 0; rank < workers; rank++)
+            transports[rank] = new InProcessTransport(rank, links);
+
+        return transports;
+    }
+
+    @Override
+    public int getRank() { return rank; }
+
+    @Override
+    public int getWorkers() { return links.length; }
+
+    @Override
+    public void send(int worker, ByteBuffer message)
+    {
+        Link link = links[rank][worker];
+        ByteBuffer copy = link.spare.poll();
+
+        if(copy == null || copy.capacity() < message.remaining())
+            copy = ByteBuffer.allocate(message.remaining());
+
+        copy.clear();
+        copy.put(message);
+        copy.flip();
+        link.messages.add(copy);
+    }
+
+    @Override
+    public void receive(int worker, ByteBuffer into) throws IOException
+    {
+        Link link = links[worker][rank];
+        ByteBuffer message;
+
+        try
+        {
+            message = link.messages.take();
+        } catch (InterruptedException e)
+        {
+            Thread.currentThread().interrupt();
+            throw new InterruptedIOException("Interrupted while waiting for worker " + worker);
+        }
+
+        if(message.remaining() > into.capacity())
+            throw new IOException("A message of " + message.remaining() + " bytes doesn't fit into " + into.capacity());
+
+        into.clear();
+        into.put(message);
+        into.flip();
+        link.spare.offer(message);
+    }
+
+    /**
+     * nothing to close, the queues go away with the transports
+     */
+    @Override
+    public void close() {}
+
+    /**
+     * The messages from one worker to another
+     */
+    private static final class Link
+    {
+        private final BlockingQueue<ByteBuffer> messages = new LinkedBlockingQueue<>();
+        private final BlockingQueue<ByteBuffer> spare = new ArrayBlockingQueue<>(SPARE);
+    }
+}
@@ -3,8 +3,10 @@ package io.github.keheck;
 import processing.core.PApplet;
 
 import java.awt.*;
+import java.nio.file.Path;
+import java.util.function.Supplier;
 
-import static io.github.keheck.CellularAutomatonAPI.isRunning;
+import static io.github.keheck.Settings.isRunning;
 
 public final class Initializer
 {
@@ -24,7 +26,10 @@ public final class Initializer
     {
         if(!isRunning)
             if(clazz.getSuperclass().equals(Cell.class))
-                CellularAutomatonAPI.clazz = clazz;
+            {
+                Settings.clazz = clazz;
+                Settings.cellFactory = null;
+            }
             else
                 throw new IllegalArgumentException("Class has to extend io.github.keheck.Cell");
         else
@@ -32,6 +37,27 @@ public final class Initializer
         return INSTANCE;
     }
 
+    /**
+     * Builds the cells with the given factory instead of the constructor without parameters of the
+     * class set by {@link #setClass(Class)}, e.g. {@code MyCell::new} or a lambda passing parameters
+     * to another constructor. Unlike the constructor it's not looked up through reflection, and a
+     * class without a constructor the API can call works as well. It has to return a new instance
+     * of the same class on every call, the grid uses one per thread.
+     * @param factory builds a new cell on every call
+     * @return {@code INITIALIZER} to chain methods
+     */
+    public Initializer setCellFactory(Supplier<? extends Cell> factory)
+    {
+        if(factory == null)
+            throw new IllegalArgumentException("The factory can't be null");
+
+        if(!isRunning)
+            Settings.cellFactory = factory;
+        else
+            System.out.println("The API is already running!");
+        return INSTANCE;
+    }
+
     /**
      * set if the cells should be randomized
      * @param random should the cells be randomized?
@@ -40,7 +66,82 @@ public final class Initializer
     public Initializer setRandom(boolean random)
     {
         if(!isRunning)
-            CellularAutomatonAPI.random = random;
+            Settings.random = random;
+        else
+            System.out.println("The API is already running!");
+        return INSTANCE;
+    }
+
+    /**
+     * @param seed the seed for randomizing the cells, the same seed always gives the same
+     *             grid (unless {@link Cell#randomizeState(java.util.Random)} uses another generator)
+     * @return {@code INITIALIZER} to chain methods
+     */
+    public Initializer setSeed(long seed)
+    {
+        if(!isRunning)
+            Settings.seed = seed;
+        else
+            System.out.println("The API is already running!");
+        return INSTANCE;
+    }
+
+    /**
+     * Randomizes the cells without {@link Cell#randomizeState(java.util.Random)}: every cell is in
+     * state 1 with the given probability and in state 0 otherwise.
+     * @param density the share of cells in state 1, between 0 and 1
+     * @return {@code INITIALIZER} to chain methods
+     */
+    public Initializer setDensity(double density)
+    {
+        if(density < 0 || density > 1)
+            throw new IllegalArgumentException("The density has to be between 0 and 1");
+
+        return setDistribution(1 - density, density);
+    }
+
+    /**
+     * Randomizes the cells without {@link Cell#randomizeState(java.util.Random)}, which is a lot faster
+     * for big grids: the states are drawn straight into the grid.
+     * @param weights how likely each state is, e.g. {@code 2, 1} for two thirds of the cells in
+     *                state 0 and one third in state 1; states without a weight don't occur
+     * @return {@code INITIALIZER} to chain methods
+     */
+    public Initializer setDistribution(double... weights)
+    {
+        double total = 0;
+
+        for(double weight : weights)
+        {
+            if(weight < 0 || Double.isNaN(weight))
+                throw new IllegalArgumentException("A weight can't be negative");
+
+            total += weight;
+        }
+
+        if(total <= 0)
+            throw new IllegalArgumentException("At least one state needs a weight");
+
+        if(!isRunning)
+            Settings.distribution = weights.clone();
+        else
+            System.out.println("The API is already running!");
+        return INSTANCE;
+    }
+
+    /**
+     * Keeps the states of the grid (both generations, and the copies drawn and recorded)
+     * in direct buffers outside of the heap, so big grids don't need a big heap and the
+     * garbage collector never has to look at them. The memory is limited by
+     * {@code -XX:MaxDirectMemorySize} instead of {@code -Xmx}, reading a state is
+     * a bit slower.
+     * @param offHeap should the states be kept outside of the heap?
+     * @return {@code INITIALIZER} to chain methods
+     */
+    public Initializer setOffHeap(boolean offHeap)
+    {
+        if(!isRunning)
+            Settings.offHeap = offHeap;
         else
             System.out.println("The API is already running!");
         return INSTANCE;
@@ -54,7 +155,7 @@ public final class Initializer
     public Initializer setTickLength(int tickLength)
     {
         if(!isRunning)
-            CellularAutomatonAPI.tickLength = tickLength;
+            Settings.tickLength = tickLength;
         else
             System.out.println("The API is already running!");
         return INSTANCE;
@@ -67,7 +168,7 @@ public final class Initializer
     public Initializer setGridHeight(int gridHeight)
     {
         if(!isRunning)
-            CellularAutomatonAPI.gridHeight = gridHeight;
+            Settings.gridHeight = gridHeight;
         else
             System.out.println("The API is already running!");
         return INSTANCE;
@@ -80,7 +181,7 @@ public final class Initializer
     public Initializer setGridWidth(int gridWidth)
     {
         if(!isRunning)
-            CellularAutomatonAPI.gridWidth = gridWidth;
+            Settings.gridWidth = gridWidth;
         else
             System.out.println("The API is already running!");
         return INSTANCE;
@@ -93,7 +194,7 @@ public final class Initializer
     public Initializer setCellSize(int cellSize)
     {
         if(!isRunning)
-            CellularAutomatonAPI.cellSize = cellSize;
+            Settings.cellSize = cellSize;
         else
             System.out.println("The API is already running!");
         return INSTANCE;
@@ -106,7 +207,261 @@ public final class Initializer
     public Initializer setBgColor(Color bgColor)
     {
         if(!isRunning)
-            CellularAutomatonAPI.bgColor = bgColor;
+            Settings.bgColor = bgColor;
+        else
+            System.out.println("The API is already running!");
+        return INSTANCE;
+    }
+
+    /**
+     * @param threads how many threads step the grid at once (1 steps it on the drawing thread)
+     * @return {@code INITIALIZER} to chain methods
+     */
+    public Initializer setThreads(int threads)
+    {
+        if(threads < 1)
+            throw new IllegalArgumentException("There has to be at least one thread");
+
+        if(!isRunning)
+            Settings.threads = threads;
+        else
+            System.out.println("The API is already running!");
+        return INSTANCE;
+    }
+
+    /**
+     * @param tileSize how many rows of cells a thread steps at once (only used with more than one thread)
+     * @return {@code INITIALIZER} to chain methods
+     */
+    public Initializer setTileSize(int tileSize)
+    {
+        if(tileSize < 1)
+            throw new IllegalArgumentException("A tile has to be at least one row high");
+
+        if(!isRunning)
+            Settings.tileSize = tileSize;
+        else
+            System.out.println("The API is already running!");
+        return INSTANCE;
+    }
+
+    /**
+     * When turned on, only the cells that changed in the last generation and
+     * their surroundings are evaluated again, so large areas that don't change
+     * anymore cost (almost) nothing. The ruleset has to depend on nothing but
+     * the cell and its neighbours (e.g. no randomness), otherwise the skipped
+     * cells would be missing changes.
+     * @param changeTracking should unchanged areas be skipped?
+     * @return {@code INITIALIZER} to chain methods
+     */
+    public Initializer setChangeTracking(boolean changeTracking)
+    {
+        if(!isRunning)
+            Settings.changeTracking = changeTracking;
+        else
+            System.out.println("The API is already running!");
+        return INSTANCE;
+    }
+
+    /**
+     * @param engine how the grid is stepped (see {@link Engine})
+     * @return {@code INITIALIZER} to chain methods
+     */
+    public Initializer setEngine(Engine engine)
+    {
+        if(!isRunning)
+            Settings.engine = engine;
+        else
+            System.out.println("The API is already running!");
+        return INSTANCE;
+    }
+
+    /**
+     * @param hashLifeStep every step advances 2^hashLifeStep generations (only used by {@link Engine#HASHLIFE})
+     * @return {@code INITIALIZER} to chain methods
+     */
+    public Initializer setHashLifeStep(int hashLifeStep)
+    {
+        if(hashLifeStep < 0 || hashLifeStep > 60)
+            throw new IllegalArgumentException("The step has to be between 2^0 and 2^60 generations");
+
+        if(!isRunning)
+            Settings.hashLifeStep = hashLifeStep;
+        else
+            System.out.println("The API is already running!");
+        return INSTANCE;
+    }
+
+    /**
+     * @param hashLifeNodes how many quadtree nodes {@link Engine#HASHLIFE} remembers before it
+     *                      drops the ones that aren't used anymore
+     * @return {@code INITIALIZER} to chain methods
+     */
+    public Initializer setHashLifeNodes(int hashLifeNodes)
+    {
+        if(hashLifeNodes < 1)
+            throw new IllegalArgumentException("HashLife needs at least one node");
+
+        if(!isRunning)
+            Settings.hashLifeNodes = hashLifeNodes;
+        else
+            System.out.println("The API is already running!");
+        return INSTANCE;
+    }
+
+    /**
+     * @param shape which cells around a cell are its neighbours (the {@link Rule} of the
+     *              cell class has to be compiled for the same shape)
+     * @return {@code INITIALIZER} to chain methods
+     */
+    public Initializer setNeighbourhood(NeighbourhoodShape shape)
+    {
+        if(!isRunning)
+            Settings.shape = shape;
+        else
+            System.out.println("The API is already running!");
+        return INSTANCE;
+    }
+
+    /**
+     * @param boundary what the cells at the edges see outside the grid (see {@link Boundary})
+     * @return {@code INITIALIZER} to chain methods
+     */
+    public Initializer setBoundary(Boundary boundary)
+    {
+        if(!isRunning)
+            Settings.boundary = boundary;
+        else
+            System.out.println("The API is already running!");
+        return INSTANCE;
+    }
+
+    /**
+     * @param boundaryState the state of the cells outside the grid (only used by {@link Boundary#FIXED})
+     * @return {@code INITIALIZER} to chain methods
+     */
+    public Initializer setBoundaryState(int boundaryState)
+    {
+        if(boundaryState < 0)
+            throw new IllegalArgumentException("A state can't be negative");
+
+        if(!isRunning)
+            Settings.boundaryState = boundaryState;
+        else
+            System.out.println("The API is already running!");
+        return INSTANCE;
+    }
+
+    /**
+     * @param downsampling how blocks of cells are drawn when they are smaller than a pixel
+     * @return {@code INITIALIZER} to chain methods
+     */
+    public Initializer setDownsampling(Downsampling downsampling)
+    {
+        if(!isRunning)
+            Settings.downsampling = downsampling;
+        else
+            System.out.println("The API is already running!");
+        return INSTANCE;
+    }
+
+    /**
+     * @param initialState a grid saved by pressing 'w' or by {@link Simulation#run(Class, Path, long, Path)},
+     *                     the window starts with it instead of random cells and takes its size; or a pattern
+     *                     ({@code .rle}, {@code .lif}, {@code .life} or {@code .cells}), which is put in the
+     *                     middle of the grid. {@link Simulation#run(Class, int, int, long)} starts with it as well.
+     * @return {@code INITIALIZER} to chain methods
+     */
+    public Initializer setInitialState(Path initialState)
+    {
+        if(!isRunning)
+            Settings.initialState = initialState;
+        else
+            System.out.println("The API is already running!");
+        return INSTANCE;
+    }
+
+    /**
+     * @param recording the file every generation is recorded to (it can be replayed with
+     *                  {@link Recording}), or {@code null} to not record anything
+     * @return {@code INITIALIZER} to chain methods
+     */
+    public Initializer setRecording(Path recording)
+    {
+        if(!isRunning)
+            Settings.recording = recording;
+        else
+            System.out.println("The API is already running!");
+        return INSTANCE;
+    }
+
+    /**
+     * @param keyframeInterval every how many generations the whole grid is recorded instead of
+     *                         only the changes; smaller means faster seeking but bigger recordings
+     * @return {@code INITIALIZER} to chain methods
+     */
+    public Initializer setKeyframeInterval(int keyframeInterval)
+    {
+        if(keyframeInterval < 1)
+            throw new IllegalArgumentException("The keyframe interval has to be at least 1");
+
+        if(!isRunning)
+            Settings.keyframeInterval = keyframeInterval;
+        else
+            System.out.println("The API is already running!");
+        return INSTANCE;
+    }
+
+    /**
+     * @param metrics whether to measure the grid (see {@link Metrics}) and publish the
+     *                numbers through JMX; the overlay ('m' in the window) works either way
+     * @return {@code INITIALIZER} to chain methods
+     */
+    public Initializer setMetrics(boolean metrics)
+    {
+        if(!isRunning)
+            Settings.metrics = metrics;
+        else
+            System.out.println("The API is already running!");
+        return INSTANCE;
+    }
+
+    /**
+     * @param listener gets the numbers {@link Metrics} collects, the grid is measured
+     *                 even if {@link #setMetrics(boolean)} is off
+     * @return {@code INITIALIZER} to chain methods
+     */
+    public Initializer addMetricsListener(MetricsListener listener)
+    {
+        if(listener == null)
+            throw new IllegalArgumentException("The listener can't be null");
+
+        if(!isRunning)
+            Settings.metricsListeners.add(listener);
+        else
+            System.out.println("The API is already running!");
+        return INSTANCE;
+    }
+
+    /**
+     * Finds out when the grid stops changing or starts repeating itself (see {@link CycleDetector}).
+     * A {@link Simulation} then skips the generations that would only repeat the cycle (unless
+     * it's recorded), the window shows the cycle on the overlay ('m').
+     * With {@link Engine#HASHLIFE}, only the generations at the end of every step of
+     * 2^k generations (see {@link #setHashLifeStep(int)}) are looked at: the period and the start
+     * of a cycle are multiples of 2^k then (a grid that stopped changing has a period of 2^k), and
+     * the history counts steps instead of generations.
+     * @param history how many generations are remembered (the longest cycle that can be found),
+     *                or 0 to not look for cycles
+     * @return {@code INITIALIZER} to chain methods
+     */
+    public Initializer setCycleDetection(int history)
+    {
+        if(history < 0 || history > 1 << 24)
+            throw new IllegalArgumentException("The history has to be between 0 and " + (1 << 24) + " generations");
+
+        if(!isRunning)
+            Settings.cycleHistory = history;
         else
             System.out.println("The API is already running!");
         return INSTANCE;
@@ -0,0 +1,251 @@
+package io.github.keheck;
+
+import javax.management.JMException;
+import javax.management.MBeanServer;
+import javax.management.ObjectName;
+import java.lang.management.ManagementFactory;
+import java.util.List;
+import java.util.concurrent.CopyOnWriteArrayList;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Measures a running grid (see {@link Initializer#setMetrics(boolean)}): how long every
+ * update and every frame takes, how many generations are stepped per second, how many
+ * cells changed and how many cells are in each state.
+ *
+ * The durations are recorded for every update and frame into {@link Histogram}s. Counting
+ * the cells takes as long as a scan of the grid, so it's only done every
+ * {@link #SAMPLE_INTERVAL} milliseconds. Without metrics the grid and the window only
+ * check a field for {@code null}.
+ *
+ * The numbers can be read from the getters, through JMX (see {@link MetricsMXBean}),
+ * from a {@link MetricsListener} or from the overlay of the window (press 'm').
+ */
+
+public final class Metrics implements MetricsMXBean
+{
+    /**
+     * how many milliseconds lie between two counts of the cells
+     */
+    public static final long SAMPLE_INTERVAL = 250;
+    //how long the generations are counted for the rate
+    private static final long RATE_WINDOW = TimeUnit.SECONDS.toNanos(1);
+    //at most that many states are counted on their own, the rest are counted in the last one
+    private static final int MAX_STATES = 1 << 16;
+
+    private final Histogram steps = new Histogram();
+    private final Histogram frames = new Histogram();
+    private final List<MetricsListener> listeners = new CopyOnWriteArrayList<>();
+    //how many states are counted at least, the cells may be in higher ones
+    private final int states;
+    private volatile long generation;
+    private volatile double rate;
+    private volatile long windowStart = System.nanoTime();
+    private volatile long windowGenerations;
+    private long lastSample;
+    private volatile int changedCells;
+    private volatile long[] population;
+
+    Metrics(Grid grid)
+    {
+        this.states = Math.min(grid.newCell().getStates(), MAX_STATES);
+        this.population = new long[states];
+        this.generation = grid.getGeneration();
+    }
+
+    /**
+     * publishes the metrics through JMX as {@code io.github.keheck:type=Metrics},
+     * replacing the ones published before
+     */
+    void register()
+    {
+        try
+        {
+            MBeanServer server = ManagementFactory.getPlatformMBeanServer();
+            ObjectName name = new ObjectName("io.github.keheck:type=Metrics");
+
+            if(server.isRegistered(name))
+                server.unregisterMBean(name);
+
+            server.registerMBean(this, name);
+        } catch (JMException e)
+        {
+            System.err.println("Couldn't publish the metrics through JMX");
+            e.printStackTrace();
+        }
+    }
+
+    /**
+     * @return metrics measuring the grid if {@link Initializer#setMetrics(boolean)} is on or there
+     *         are listeners, otherwise {@code null}
+     */
+    static Metrics attach(Grid grid)
+    {
+        if(!Settings.metrics && Settings.metricsListeners.isEmpty())
+            return null;
+
+        Metrics metrics = new Metrics(grid);
+        metrics.listeners.addAll(Settings.metricsListeners);
+
+        if(Settings.metrics)
+            metrics.register();
+
+        grid.setMetrics(metrics);
+        return metrics;
+    }
+
+    /**
+     * records an update, called by the grid on the thread stepping it
+     */
+    void stepped(Grid grid, long generations, long nanos)
+    {
+        long now = System.nanoTime();
+
+        steps.record(nanos);
+        generation = grid.getGeneration();
+        windowGenerations += generations;
+
+        if(now - windowStart >= RATE_WINDOW)
+        {
+            rate = windowGenerations * 1e9 / (now - windowStart);
+            windowGenerations = 0;
+            windowStart = now;
+        }
+
+        for(MetricsListener listener : listeners)
+            listener.stepped(generation, generations, nanos);
+
+        if(now - lastSample >= TimeUnit.MILLISECONDS.toNanos(SAMPLE_INTERVAL))
+        {
+            lastSample = now;
+            changedCells = grid.getChangedCells();
+            population = grid.countStates(states, MAX_STATES);
+
+            for(MetricsListener listener : listeners)
+                listener.sampled(this);
+        }
+    }
+
+    /**
+     * records a frame, called by the window after drawing the grid
+     */
+    void rendered(long nanos)
+    {
+        frames.record(nanos);
+
+        for(MetricsListener listener : listeners)
+            listener.rendered(nanos);
+    }
+
+    @Override
+    public long getGeneration() { return generation; }
+
+    /**
+     * @return how many generations were stepped per second over the last second
+     */
+    @Override
+    public double getGenerationsPerSecond()
+    {
+        long elapsed = System.nanoTime() - windowStart;
+
+        //when the grid stops, the rate goes down instead of staying where it was
+        return elapsed > RATE_WINDOW ? windowGenerations * 1e9 / elapsed : rate;
+    }
+
+    /**
+     * @return how many updates were recorded
+     */
+    @Override
+    public long getUpdates() { return steps.getCount(); }
+
+    @Override
+    public double getStepMeanMillis() { return steps.getMean() / 1e6; }
+
+    @Override
+    public double getStepP50Millis() { return getStepLatency(50) / 1e6; }
+
+    @Override
+    public double getStepP99Millis() { return getStepLatency(99) / 1e6; }
+
+    @Override
+    public double getStepMaxMillis() { return steps.getMax() / 1e6; }
+
+    /**
+     * @param percentile between 0 and 100
+     * @return how many nanoseconds an update took at the given percentile
+     */
+    public long getStepLatency(double percentile) { return steps.getPercentile(percentile); }
+
+    /**
+     * @return how many cells changed their state in the last counted generation
+     */
+    @Override
+    public int getChangedCells() { return changedCells; }
+
+    /**
+     * @return how many cells were in each state in the last counted generation, at least one entry
+     *         per state of the cell and more if a cell was in a higher state
+     *         (states above 65535 are counted in the last entry)
+     */
+    @Override
+    public long[] getPopulation() { return population.clone(); }
+
+    /**
+     * @return how many frames were recorded
+     */
+    @Override
+    public long getFrames() { return frames.getCount(); }
+
+    @Override
+    public double getFrameMeanMillis() { return frames.getMean() / 1e6; }
+
+    @Override
+    public double getFrameP99Millis() { return getFrameTime(99) / 1e6; }
+
+    @Override
+    public double getFrameMaxMillis() { return frames.getMax() / 1e6; }
+
+    /**
+     * @param percentile between 0 and 100
+     * @return how many nanoseconds drawing a frame took at the given percentile
+     */
+    public long getFrameTime(double percentile) { return frames.getPercentile(percentile); }
+
+    @Override
+    public void reset()
+    {
+        steps.reset();
+        frames.reset();
+    }
+
+    /**
+     * @return the numbers as a few lines of text, as they're shown on the overlay
+     */
+    @Override
+    public String toString()
+    {
+        long[] population = this.population;
+        StringBuilder states = new StringBuilder();
+        long total = 0;
+
+        for(int state = 0; state < population.length; state++)
+        {
+            if(state > 0)
+                total += population[state];
+            if(population.length <= 8)
+                states.append(state == 0 ? " (" : ", ").append(state).append(": ").append(population[state]);
+        }
+
+        if(population.length <= 8)
+            states.append(')');
+
+        return String.format("generation %d, %.1f generations/s\n" +
+                             "step: mean %.2f ms, p50 %.2f ms, p99 %.2f ms, max %.2f ms\n" +
+                             "frame: mean %.2f ms, p99 %.2f ms, max %.2f ms\n" +
+                             "changed cells %d, population %d%s",
+                             getGeneration(), getGenerationsPerSecond(),
+                             getStepMeanMillis(), getStepP50Millis(), getStepP99Millis(), getStepMaxMillis(),
+                             getFrameMeanMillis(), getFrameP99Millis(), getFrameMaxMillis(),
+                             getChangedCells(), total, states);
+    }
+}
@@ -0,0 +1,30 @@
+package io.github.keheck;
+
+/**
+ * Gets the numbers {@link Metrics} collects as they come in (see
+ * {@link Initializer#addMetricsListener(MetricsListener)}). The methods are called on
+ * the thread stepping the grid or drawing the window, so they should return quickly.
+ */
+
+public interface MetricsListener
+{
+    /**
+     * called after every update of the grid
+     * @param generation the generation the grid is at now
+     * @param generations how many generations the update stepped (more than one with {@link Engine#HASHLIFE})
+     * @param nanos how long the update took
+     */
+    void stepped(long generation, long generations, long nanos);
+
+    /**
+     * called every {@link Metrics#SAMPLE_INTERVAL} milliseconds while the grid is stepped,
+     * after the changed cells and the population were counted
+     */
+    default void sampled(Metrics metrics) {}
+
+    /**
+     * called after the window drew a frame
+     * @param nanos how long drawing the grid took
+     */
+    default void rendered(long nanos) {}
+}
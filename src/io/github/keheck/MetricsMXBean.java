@@ -0,0 +1,40 @@
+package io.github.keheck;
+
+/**
+ * What {@link Metrics} shows through JMX (e.g. in JConsole or VisualVM), as
+ * {@code io.github.keheck:type=Metrics}. Durations are in milliseconds.
+ */
+
+public interface MetricsMXBean
+{
+    long getGeneration();
+
+    double getGenerationsPerSecond();
+
+    long getUpdates();
+
+    double getStepMeanMillis();
+
+    double getStepP50Millis();
+
+    double getStepP99Millis();
+
+    double getStepMaxMillis();
+
+    int getChangedCells();
+
+    long[] getPopulation();
+
+    long getFrames();
+
+    double getFrameMeanMillis();
+
+    double getFrameP99Millis();
+
+    double getFrameMaxMillis();
+
+    /**
+     * forgets the durations recorded so far
+     */
+    void reset();
+}
@@ -0,0 +1,196 @@
+package io.github.keheck;
+
+import java.util.Arrays;
+
+/**
+ * A read-only view on the neighbours of the cell that is currently updated.
+ * It reads straight from the previous generation, so nothing is copied
+ * or allocated while the ruleset runs. The {@link Grid} reuses one instance
+ * for every cell, so don't keep a reference to it after
+ * {@link Cell#changeState(Neighbourhood)} returned.
+ *
+ * Which cells are neighbours is set by the {@link NeighbourhoodShape}, what the cells
+ * at the edges see outside the grid by the {@link Boundary} (see
+ * {@link Initializer#setNeighbourhood(NeighbourhoodShape)} and {@link Initializer#setBoundary(Boundary)}).
+ * By default, the neighbourhood consists of the eight surrounding cells and
+ * cells outside the grid don't count as neighbours.
+ */
+
+public final class Neighbourhood
+{
+    private final Grid grid;
+    private final NeighbourhoodShape shape;
+    private final int halo;
+    private final int[] deltas;
+    //surroundings[n] holds n neighbours, all of them share the same Cell objects
+    private final Cell[][] surroundings;
+    private StateBuffer states;
+    private Channels channels;
+    private int x;
+    private int y;
+    private int index;
+    private boolean inside;
+
+    Neighbourhood(Grid grid)
+    {
+        this.grid = grid;
+        this.shape = grid.getShape();
+        this.halo = shape.getRadius();
+        this.deltas = shape.deltas(grid.getStride());
+
+        Cell[] neighbours = new Cell[deltas.length];
+
+        for(int i = 0; i < neighbours.length; i++)
+            neighbours[i] = new Cell();
+
+        surroundings = new Cell[neighbours.length+1][];
+
+        for(int i = 0; i < surroundings.length; i++)
+            surroundings[i] = Arrays.copyOf(neighbours, i);
+    }
+
+    /**
+     * points the view to the cell at (x|y) of the given generation,
+     * whose halo has to be filled (see {@link Grid#fillHalo(StateBuffer, Channels)})
+     */
+    void moveTo(StateBuffer states, Channels channels, int x, int y)
+    {
+        this.states = states;
+        this.channels = channels;
+        this.x = x;
+        this.y = y;
+        this.index = grid.index(x, y);
+        //only truncated neighbourhoods lose neighbours at the edges
+        this.inside = grid.getBoundary() != Boundary.TRUNCATED ||
+                      (x >= halo && y >= halo && x < grid.getWidth()-halo && y < grid.getHeight()-halo);
+    }
+
+    /**
+     * @return the x index of the cell that is updated
+     */
+    public int getX() { return x; }
+
+    /**
+     * @return the y index of the cell that is updated
+     */
+    public int getY() { return y; }
+
+    /**
+     * @param dx the horizontal offset to the updated cell
+     * @param dy the vertical offset to the updated cell
+     * @return the state of the cell at the given offset (see {@link Boundary} for
+     * cells outside the grid, truncated ones are 0)
+     */
+    public int get(int dx, int dy)
+    {
+        if(Math.abs(dx) <= halo && Math.abs(dy) <= halo)
+            return states.get(index + dy*grid.getStride() + dx);
+
+        //further away than the halo reaches
+        int nx = grid.getBoundary().map(x+dx, grid.getWidth());
+        int ny = grid.getBoundary().map(y+dy, grid.getHeight());
+
+        if(nx < 0 || ny < 0)
+            return grid.getBoundary() == Boundary.FIXED ? grid.getBoundaryState() : 0;
+
+        return states.get(grid.index(nx, ny));
+    }
+
+    /**
+     * @param neighbour the index of the neighbour in the {@link NeighbourhoodShape}
+     * @return the state of the neighbour (0 if it's outside a truncated grid)
+     */
+    public int getNeighbour(int neighbour) { return states.get(index + deltas[neighbour]); }
+
+    /**
+     * @param neighbour the index of the neighbour in the {@link NeighbourhoodShape}
+     * @return the value of the neighbour's channel (see {@link Cell#getChannels()}), 0 if
+     * it's outside a truncated or fixed grid
+     */
+    public int getInt(Channel channel, int neighbour) { return channels.getInt(channel, index + deltas[neighbour]); }
+
+    /**
+     * @see #getInt(Channel, int)
+     */
+    public float getFloat(Channel channel, int neighbour) { return channels.getFloat(channel, index + deltas[neighbour]); }
+
+    /**
+     * @see #getInt(Channel, int)
+     */
+    public byte getByte(Channel channel, int neighbour) { return channels.getByte(channel, index + deltas[neighbour]); }
+
+    /**
+     * @return the shape of the neighbourhood
+     */
+    public NeighbourhoodShape getShape() { return shape; }
+
+    /**
+     * @return the number of neighbours (less at the edges of a truncated grid)
+     */
+    public int size()
+    {
+        if(inside)
+            return deltas.length;
+
+        int size = 0;
+
+        for(int i = 0; i < deltas.length; i++)
+            if(contains(i))
+                size++;
+
+        return size;
+    }
+
+    /**
+     * @param state the state to look for
+     * @return how many neighbours are in the given state
+     */
+    public int count(int state)
+    {
+        int count = 0;
+
+        for(int i = 0; i < deltas.length; i++)
+            if((inside || contains(i)) && states.get(index + deltas[i]) == state)
+                count++;
+
+        return count;
+    }
+
+    /**
+     * @return the sum of the states of all neighbours
+     */
+    public int sum()
+    {
+        int sum = 0;
+
+        //cells outside a truncated grid are 0, they don't add anything
+        for(int i = 0; i < deltas.length; i++)
+            sum += states.get(index + deltas[i]);
+
+        return sum;
+    }
+
+    /**
+     * Fills the shared neighbour cells for the old {@link Cell#changeState(Cell[])} ruleset.
+     * @return the neighbours as cells, in the order of the {@link NeighbourhoodShape}
+     */
+    Cell[] toCells()
+    {
+        Cell[] neighbours = surroundings[surroundings.length-1];
+        int count = 0;
+
+        for(int i = 0; i < deltas.length; i++)
+            if(inside || contains(i))
+                neighbours[count++].setState(states.get(index + deltas[i]));
+
+        return surroundings[count];
+    }
+
+    private boolean contains(int neighbour)
+    {
+        int nx = x+shape.dx[neighbour];
+        int ny = y+shape.dy[neighbour];
+
+        return nx >= 0 && ny >= 0 && nx < grid.getWidth() && ny < grid.getHeight();
+    }
+}
@@ -0,0 +1,162 @@
+package io.github.keheck;
+
+import java.util.Arrays;
+
+/**
+ * Which cells around a cell are its neighbours (see {@link Initializer#setNeighbourhood(NeighbourhoodShape)}),
+ * given as a list of offsets. The order of the offsets is the order of the neighbours in
+ * {@link Neighbourhood#getNeighbour(int)}, {@link Cell#changeState(Cell[])} and
+ * {@link Rule#configurations(NeighbourhoodShape, int, java.util.function.ToIntFunction)}.
+ *
+ * The built-in shapes list their offsets in column-major order, so {@link #MOORE}
+ * has the same order the API always used.
+ */
+
+public final class NeighbourhoodShape
+{
+    /**
+     * The eight surrounding cells, the default
+     */
+    public static final NeighbourhoodShape MOORE = moore(1);
+
+    //the offsets of the neighbours
+    final int[] dx;
+    final int[] dy;
+    //the biggest distance of a neighbour along any axis
+    private final int radius;
+
+    private NeighbourhoodShape(int[] dx, int[] dy)
+    {
+        this.dx = dx;
+        this.dy = dy;
+
+        int radius = 0;
+
+        for(int i = 0; i < dx.length; i++)
+            radius = Math.max(radius, Math.max(Math.abs(dx[i]), Math.abs(dy[i])));
+
+        this.radius = radius;
+    }
+
+    /**
+     * @param radius how far the neighbourhood reaches
+     * @return every cell in the square of {@code 2*radius+1} cells around the cell
+     */
+    public static NeighbourhoodShape moore(int radius)
+    {
+        return within(radius, false);
+    }
+
+    /**
+     * @param radius how far the neighbourhood reaches
+     * @return every cell that is at most {@code radius} steps (without diagonals) away from the cell
+     */
+    public static NeighbourhoodShape vonNeumann(int radius)
+    {
+        return within(radius, true);
+    }
+
+    private static NeighbourhoodShape within(int radius, boolean manhattan)
+    {
+        if(radius < 1)
+            throw new IllegalArgumentException("The radius has to be at least 1");
+
+        int[] offsets = new int[2*(2*radius+1)*(2*radius+1)];
+        int count = 0;
+
+        for(int dx = -radius; dx <= radius; dx++)
+        {
+            for(int dy = -radius; dy <= radius; dy++)
+            {
+                if((dx == 0 && dy == 0) || (manhattan && Math.abs(dx)+Math.abs(dy) > radius))
+                    continue;
+
+                offsets[count++] = dx;
+                offsets[count++] = dy;
+            }
+        }
+
+        return custom(Arrays.copyOf(offsets, count));
+    }
+
+    /**
+     * The six neighbours of a hexagonal grid, mapped onto the square grid by
+     * shearing it: it's the Moore neighbourhood without the cells at (1|-1) and (-1|1).
+     * @return the hexagonal neighbourhood
+     */
+    public static NeighbourhoodShape hexagonal()
+    {
+        return custom(-1, -1,  -1, 0,  0, -1,  0, 1,  1, 0,  1, 1);
+    }
+
+    /**
+     * @param offsets the offsets of the neighbours as pairs of x and y, e.g.
+     *                {@code custom(-1, 0, 1, 0)} for the cells to the left and right
+     * @return the neighbourhood
+     */
+    public static NeighbourhoodShape custom(int... offsets)
+    {
+        if(offsets.length == 0 || offsets.length % 2 != 0)
+            throw new IllegalArgumentException("The offsets have to be pairs of x and y");
+
+        int[] dx = new int[offsets.length/2];
+        int[] dy = new int[offsets.length/2];
+
+        for(int i = 0; i < dx.length; i++)
+        {
+            dx[i] = offsets[2*i];
+            dy[i] = offsets[2*i+1];
+
+            if(dx[i] == 0 && dy[i] == 0)
+                throw new IllegalArgumentException("A cell can't be its own neighbour");
+        }
+
+        return new NeighbourhoodShape(dx, dy);
+    }
+
+    /**
+     * @return the number of neighbours
+     */
+    public int size() { return dx.length; }
+
+    /**
+     * @return the horizontal offset of the given neighbour
+     */
+    public int getDx(int neighbour) { return dx[neighbour]; }
+
+    /**
+     * @return the vertical offset of the given neighbour
+     */
+    public int getDy(int neighbour) { return dy[neighbour]; }
+
+    /**
+     * @return the biggest distance of a neighbour along any axis
+     */
+    public int getRadius() { return radius; }
+
+    /**
+     * @return the index distances from a cell to its neighbours in a buffer with the given row length
+     */
+    int[] deltas(int stride)
+    {
+        int[] deltas = new int[dx.length];
+
+        for(int i = 0; i < dx.length; i++)
+            deltas[i] = dy[i]*stride + dx[i];
+
+        return deltas;
+    }
+
+    @Override
+    public boolean equals(Object o)
+    {
+        if(!(o instanceof NeighbourhoodShape))
+            return false;
+
+        NeighbourhoodShape shape = (NeighbourhoodShape)o;
+        return Arrays.equals(dx, shape.dx) && Arrays.equals(dy, shape.dy);
+    }
+
+    @Override
+    public int hashCode() { return 31*Arrays.hashCode(dx) + Arrays.hashCode(dy); }
+}
@@ -0,0 +1,147 @@
+package io.github.keheck;
+
+/**
+ * A two-state {@link Rule} that only depends on the state of the cell and
+ * the number of living cells among its eight neighbours, written in the
+ * usual B/S notation (e.g. {@code B3/S23} for Conway's Game of Life).
+ * Cells in state 0 are dead, every other state counts as alive.
+ *
+ * Declaring the ruleset like this (see {@link Cell#getRule()}) allows
+ * engines like {@link Engine#HASHLIFE} to step the grid without calling
+ * {@link Cell#changeState(Neighbourhood)} for every cell.
+ */
+
+public final class OuterTotalisticRule extends Rule
+{
+    /**
+     * Conway's Game of Life
+     */
+    public static final OuterTotalisticRule LIFE = parse("B3/S23");
+
+    //bit n is set when a cell with n living neighbours is born/survives
+    private final int birth;
+    private final int survival;
+
+    /**
+     * @param birth bit n is set when a dead cell with n living neighbours is born
+     * @param survival bit n is set when a living cell with n living neighbours stays alive
+     */
+    public OuterTotalisticRule(int birth, int survival)
+    {
+        super(Kind.LIFE_LIKE, NeighbourhoodShape.MOORE, 2, table(birth, survival));
+
+        this.birth = birth;
+        this.survival = survival;
+    }
+
+    /**
+     * @return the lookup table, indexed by {@code (alive ? 9 : 0) + living neighbours}
+     */
+    private static int[] table(int birth, int survival)
+    {
+        if((birth | survival) >>> 9 != 0)
+            throw new IllegalArgumentException("A cell can't have more than 8 living neighbours");
+
+        int[] table = new int[18];
+
+        for(int neighbours = 0; neighbours <= 8; neighbours++)
+        {
+            table[neighbours] = (birth >> neighbours) & 1;
+            table[9 + neighbours] = (survival >> neighbours) & 1;
+        }
+
+        return table;
+    }
+
+    /**
+     * @param rule the rule in B/S notation ({@code B3/S23}) or S/B notation ({@code 23/3})
+     * @return the parsed rule
+     */
+    public static OuterTotalisticRule parse(String rule)
+    {
+        String[] parts = rule.trim().split("/");
+
+        if(parts.length != 2)
+            throw new IllegalArgumentException("Not a B/S rule: " + rule);
+
+        String birth;
+        String survival;
+
+        if(parts[0].toUpperCase().startsWith("B"))
+        {
+            birth = parts[0];
+            survival = parts[1];
+        }
+        else
+        {
+            birth = parts[1];
+            survival = parts[0];
+        }
+
+        return new OuterTotalisticRule(parseCounts(birth, rule), parseCounts(survival, rule));
+    }
+
+    private static int parseCounts(String counts, String rule)
+    {
+        int mask = 0;
+
+        for(char c : counts.toCharArray())
+        {
+            if(c == 'B' || c == 'b' || c == 'S' || c == 's')
+                continue;
+            if(c < '0' || c > '8')
+                throw new IllegalArgumentException("Not a B/S rule: " + rule);
+
+            mask |= 1 << (c - '0');
+        }
+
+        return mask;
+    }
+
+    /**
+     * @param state the current state of the cell (everything but 0 is alive)
+     * @param neighbours how many of the neighbours are alive
+     * @return the next state, 0 or 1
+     */
+    public int next(int state, int neighbours)
+    {
+        return ((state != 0 ? survival : birth) >> neighbours) & 1;
+    }
+
+    /**
+     * @return bit n is set when a dead cell with n living neighbours is born
+     */
+    public int getBirth() { return birth; }
+
+    /**
+     * @return bit n is set when a living cell with n living neighbours stays alive
+     */
+    public int getSurvival() { return survival; }
+
+    @Override
+    public boolean equals(Object o)
+    {
+        if(!(o instanceof OuterTotalisticRule))
+            return false;
+
+        OuterTotalisticRule rule = (OuterTotalisticRule)o;
+        return birth == rule.birth && survival == rule.survival;
+    }
+
+    @Override
+    public int hashCode() { return birth*31 + survival; }
+
+    @Override
+    public String toString() { return "B" + counts(birth) + "/S" + counts(survival); }
+
+    private static String counts(int mask)
+    {
+        StringBuilder builder = new StringBuilder();
+
+        for(int i = 0; i <= 8; i++)
+            if((mask >> i & 1) != 0)
+                builder.append(i);
+
+        return builder.toString();
+    }
+}
@@ -0,0 +1,252 @@
+package io.github.keheck;
+
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.util.function.Supplier;
+
+/**
+ * One worker of a grid that is split into horizontal strips, so it can be stepped by several
+ * processes (or threads) that each only hold their own strip. The strips are exchanged through
+ * a {@link Transport}, so the workers can run in the same process ({@link InProcessTransport})
+ * or in different ones ({@link SocketTransport}):
+ * <pre>
+ * Transport transport = SocketTransport.connect(rank, workers, "localhost", 7000);
+ * Partition partition = new Partition(MyCell.class, 4096, 4096, transport);
+ * partition.randomize(42);
+ * partition.step(1000);
+ * </pre>
+ *
+ * Every worker keeps its strip in a {@link Grid} with as many extra rows above and below
+ * as the neighbourhood reaches, which hold the edges of the strips next to it. A generation
+ * sends the own edges to the neighbours first, then steps the rows that don't need the
+ * extra rows while the edges of the neighbours are on their way, and only then waits for them
+ * and steps the rest. Waiting for both neighbours' edges of the same generation keeps the
+ * workers in step, a worker can be at most one generation ahead of its neighbours.
+ *
+ * Every cell sees the same neighbours as in a single grid (including the {@link Boundary}),
+ * so the strips hold the same states as a single grid of the whole size stepped with
+ * {@link Grid#update()}, and {@link #randomize(long)} seeds them like {@link Grid#randomize(long)}.
+ * Only {@link Engine#TABLE}, {@link Engine#VECTOR} and {@link Engine#CELLS} can be partitioned; each worker steps
+ * its strip on a single thread.
+ */
+
+public final class Partition
+{
+    private final Transport transport;
+    private final int width;
+    private final int height;
+    private final int halo;
+    //the rows of the whole grid that belong to this worker
+    private final int fromY;
+    private final int toY;
+    //the workers holding the strips above and below, -1 at an edge of the grid
+    private final int upper;
+    private final int lower;
+    //the extra rows above and below the strip
+    private final int above;
+    private final int below;
+    private final Grid grid;
+    private final StateBuffer rows;
+    private final ByteBuffer message;
+    //how many bytes a state takes up in a message
+    private final int bytes;
+
+    /**
+     * Creates the strip of this worker, the rest of the settings (rule, neighbourhood, boundary...)
+     * are read from the {@link Settings} just like a {@link Grid} reads them.
+     * @param width the width of the whole grid
+     * @param height the height of the whole grid
+     * @param transport connects this worker to the others
+     * @throws IllegalArgumentException if a strip would be lower than the neighbourhood reaches
+     */
+    public Partition(Class<? extends Cell> clazz, int width, int height, Transport transport)
+    {
+        this(Grid.factory(clazz), width, height, transport);
+    }
+
+    /**
+     * @param factory builds the cells instead of the constructor of their class (see {@link Initializer#setCellFactory(Supplier)})
+     */
+    public Partition(Supplier<? extends Cell> factory, int width, int height, Transport transport)
+    {
+        int workers = transport.getWorkers();
+        int rank = transport.getRank();
+        boolean toroidal = Settings.boundary == Boundary.TOROIDAL;
+
+        this.transport = transport;
+        this.width = width;
+        this.height = height;
+        this.halo = Settings.shape.getRadius();
+        this.fromY = (int)((long)height*rank/workers);
+        this.toY = (int)((long)height*(rank+1)/workers);
+
+        //every strip only talks to the ones next to it
+        if(workers > 1 && height/workers < Math.max(1, halo))
+            throw new IllegalArgumentException("A grid " + height + " cells high can't be split into " + workers +
+                                               " strips, each has to be at least " + Math.max(1, halo) + " high");
+
+        this.upper = rank > 0 ? rank-1 : toroidal && workers > 1 ? workers-1 : -1;
+        this.lower = rank < workers-1 ? rank+1 : toroidal && workers > 1 ? 0 : -1;
+        this.above = upper >= 0 ? halo : 0;
+        this.below = lower >= 0 ? halo : 0;
+        this.grid = new Grid(width, above + toY-fromY + below, factory, true);
+
+        int states = grid.newCell().getStates();
+
+        this.bytes = states <= 1 << 8 ? 1 : states <= 1 << 16 ? 2 : 4;
+        this.rows = StateBuffer.create(width*halo, states);
+        this.message = ByteBuffer.allocate(Long.BYTES + width*halo*bytes);
+    }
+
+    /**
+     * @return the first row of the whole grid that belongs to this worker
+     */
+    public int getFromY() { return fromY; }
+
+    /**
+     * @return the row of the whole grid behind the last one that belongs to this worker
+     */
+    public int getToY() { return toY; }
+
+    public int getWidth() { return width; }
+
+    public int getHeight() { return height; }
+
+    /**
+     * @return how many generations were stepped
+     */
+    public long getGeneration() { return grid.getGeneration(); }
+
+    /**
+     * @return the state of the cell at (x|y) of the whole grid, which has to belong to this worker
+     */
+    public int getState(int x, int y) { return grid.getState(x, row(y)); }
+
+    /**
+     * sets the state of the cell at (x|y) of the whole grid, which has to belong to this worker
+     */
+    public void setState(int x, int y, int state)
+    {
+        grid.setState(x, row(y), state);
+        grid.invalidate();
+    }
+
+    /**
+     * @return how many cells of the strip aren't in state 0
+     */
+    public long getPopulation()
+    {
+        long population = 0;
+
+        for(int y = fromY; y < toY; y++)
+            for(int x = 0; x < width; x++)
+                if(getState(x, y) != 0)
+                    population++;
+
+        return population;
+    }
+
+    /**
+     * seeds the strip like {@link Grid#randomize(long)} seeds a grid of the whole size
+     */
+    public void randomize(long seed) { grid.randomize(seed, fromY - above, height); }
+
+    /**
+     * Steps the given number of generations. All workers have to step the same number,
+     * since every generation waits for the neighbours.
+     * @throws IOException if the transport fails
+     */
+    public void step(long generations) throws IOException
+    {
+        int first = above;
+        int last = above + toY-fromY;
+        //the rows that don't reach into the extra rows
+        int innerFrom = Math.min(last, first + above);
+        int innerTo = Math.max(innerFrom, last - below);
+
+        for(long i = 0; i < generations; i++)
+        {
+            long generation = grid.getGeneration();
+
+            grid.beginGeneration();
+
+            //bottom edge first: with two workers, both neighbours are the same one and the
+            //messages have to arrive in the order they are received
+            if(lower >= 0)
+                send(lower, generation, last - halo);
+            if(upper >= 0)
+                send(upper, generation, first);
+
+            grid.stepRows(innerFrom, innerTo);
+
+            if(upper >= 0)
+                receive(upper, generation, 0);
+            if(lower >= 0)
+                receive(lower, generation, last);
+
+            grid.stepRows(first, innerFrom);
+            grid.stepRows(innerTo, last);
+            grid.endGeneration();
+            grid.setGeneration(generation + 1);
+        }
+    }
+
+    /**
+     * sends the {@link #halo} rows of the strip from {@code fromY} on
+     */
+    private void send(int worker, long generation, int fromY) throws IOException
+    {
+        grid.exportRows(fromY, fromY + halo, rows);
+        message.clear();
+        message.putLong(generation);
+
+        for(int cell = 0; cell < width*halo; cell++)
+        {
+            if(bytes == 1)
+                message.put((byte)rows.get(cell));
+            else if(bytes == 2)
+                message.putShort((short)rows.get(cell));
+            else
+                message.putInt(rows.get(cell));
+        }
+
+        message.flip();
+        transport.send(worker, message);
+    }
+
+    /**
+     * receives the {@link #halo} rows of a neighbour into the strip from {@code fromY} on
+     */
+    private void receive(int worker, long generation, int fromY) throws IOException
+    {
+        transport.receive(worker, message);
+
+        long received = message.getLong();
+
+        if(received != generation || message.remaining() != width*halo*bytes)
+            throw new IOException("Worker " + worker + " sent generation " + received + " while waiting for " + generation);
+
+        for(int cell = 0; cell < width*halo; cell++)
+        {
+            if(bytes == 1)
+                rows.set(cell, message.get() & 0xFF);
+            else if(bytes == 2)
+                rows.set(cell, message.getShort() & 0xFFFF);
+            else
+                rows.set(cell, message.getInt());
+        }
+
+        grid.importRows(fromY, fromY + halo, rows);
+    }
+
+    /**
+     * @return the row of the strip's grid that shows the given row of the whole grid
+     */
+    private int row(int y)
+    {
+        if(y < fromY || y >= toY)
+            throw new IllegalArgumentException("Row " + y + " belongs to another worker, this one has " + fromY + " to " + (toY-1));
+
+        return y - fromY + above;
+    }
+}
@@ -0,0 +1,638 @@
+package io.github.keheck;
+
+import java.io.BufferedReader;
+import java.io.IOException;
+import java.io.Reader;
+import java.io.Writer;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+
+/**
+ * Loads and saves patterns in the formats most pattern collections use, picked by the
+ * extension of the file:
+ * <ul>
+ *     <li>{@code .rle}: run length encoded, including the extended format for up to 256
+ *         states ({@code .} for state 0, {@code A} to {@code X} for 1 to 24, {@code pA} to
+ *         {@code yO} for the states above)</li>
+ *     <li>{@code .lif} and {@code .life}: Life 1.06, the coordinates of the living cells,
+ *         with (0|0) in the middle of the grid</li>
+ *     <li>{@code .cells}: plain text, {@code .} for dead and {@code O} for living cells</li>
+ * </ul>
+ * A loaded pattern is put in the middle of the grid (the cells that don't fit are dropped),
+ * a saved one is cut down to the cells that aren't in state 0.
+ *
+ * The files are read and written one character at a time, straight from and into the grid,
+ * so even huge patterns don't take more memory than the grid itself.
+ */
+
+final class PatternFile
+{
+    //how long the lines of a saved RLE may get
+    private static final int LINE = 70;
+
+    private PatternFile() {}
+
+    /**
+     * @return whether the file has the extension of one of the pattern formats
+     */
+    static boolean isPattern(Path path) { return format(path) != null; }
+
+    /**
+     * clears the grid and puts the pattern in the middle of it, the cells that don't fit
+     * are dropped unless the grid is unbounded (see {@link Engine#CHUNKED})
+     * @throws IllegalArgumentException if the file isn't a pattern or holds states the cells don't have
+     */
+    static void load(Grid grid, Path path) throws IOException
+    {
+        Format format = format(path);
+
+        if(format == null)
+            throw new IllegalArgumentException(path + " isn't a pattern (.rle, .lif, .life or .cells)");
+
+        grid.resetGrid();
+
+        try(Reader in = Files.newBufferedReader(path, StandardCharsets.ISO_8859_1))
+        {
+            Placer placer;
+
+            switch(format)
+            {
+                case RLE: placer = loadRle(grid, (BufferedReader)in, path); break;
+                case LIFE_106: placer = loadLife(grid, in, path); break;
+                default: placer = loadPlaintext(grid, in, path); break;
+            }
+
+            if(placer.dropped > 0)
+                System.err.println(path + " doesn't fit into the grid, " + placer.dropped + " cells were dropped");
+        }
+
+        grid.invalidate();
+    }
+
+    /**
+     * saves the cells that aren't in state 0
+     * @param path where to save the pattern, an existing file is overwritten
+     * @throws IllegalArgumentException if the format can't hold the states of the cells
+     */
+    static void save(Grid grid, Path path) throws IOException
+    {
+        Format format = format(path);
+        int states = grid.newCell().getStates();
+
+        if(format == null)
+            throw new IllegalArgumentException(path + " isn't a pattern (.rle, .lif, .life or .cells)");
+        if(format == Format.RLE && states > 256)
+            throw new IllegalArgumentException("RLE can't hold more than 256 states, save the grid instead");
+        if(format != Format.RLE && states > 2)
+            throw new IllegalArgumentException("Only RLE can hold more than two states");
+
+        try(Writer out = Files.newBufferedWriter(path, StandardCharsets.ISO_8859_1))
+        {
+            switch(format)
+            {
+                case RLE: saveRle(grid, out); break;
+                case LIFE_106: saveLife(grid, out); break;
+                default: savePlaintext(grid, out); break;
+            }
+        }
+    }
+
+    private static Format format(Path path)
+    {
+        String name = path.getFileName().toString().toLowerCase();
+
+        if(name.endsWith(".rle"))
+            return Format.RLE;
+        else if(name.endsWith(".lif") || name.endsWith(".life"))
+            return Format.LIFE_106;
+        else if(name.endsWith(".cells"))
+            return Format.PLAINTEXT;
+        else
+            return null;
+    }
+
+    private static Placer loadRle(Grid grid, BufferedReader in, Path path) throws IOException
+    {
+        String line;
+
+        do
+            line = in.readLine();
+        while(line != null && (line.trim().isEmpty() || line.startsWith("#")));
+
+        if(line == null || !line.trim().startsWith("x"))
+            throw new IllegalArgumentException(path + " doesn't have an RLE header (x = ..., y = ...)");
+
+        int width = 0;
+        int height = 0;
+
+        for(String field : line.split(","))
+        {
+            String[] pair = field.split("=", 2);
+
+            if(pair.length != 2)
+                throw new IllegalArgumentException(path + " has a broken RLE header: " + line);
+
+            String key = pair[0].trim();
+            String value = pair[1].trim();
+
+            if(key.equals("x"))
+                width = Integer.parseInt(value);
+            else if(key.equals("y"))
+                height = Integer.parseInt(value);
+            else if(key.equals("rule"))
+                checkRule(grid, value, path);
+        }
+
+        Placer placer = new Placer(grid, width, height, path);
+        int x = 0;
+        int y = 0;
+        int count = 0;
+        //the value of a p to y before a multi-state letter
+        int prefix = 0;
+
+        for(int c = in.read(); c != -1 && c != '!'; c = in.read())
+        {
+            if(c >= '0' && c <= '9')
+            {
+                count = count*10 + (c-'0');
+                continue;
+            }
+            if(c == ' ' || c == '\t' || c == '\r' || c == '\n')
+                continue;
+            if(c >= 'p' && c <= 'y')
+            {
+                prefix = c-'p' + 1;
+                continue;
+            }
+
+            int run = count > 0 ? count : 1;
+            count = 0;
+
+            if(c == '$')
+            {
+                x = 0;
+                y += run;
+                continue;
+            }
+
+            int state;
+
+            if(c >= 'A' && c <= 'X')
+                state = prefix*24 + (c-'A') + 1;
+            else if(prefix == 0 && (c == 'b' || c == '.'))
+                state = 0;
+            else if(prefix == 0 && c == 'o')
+                state = 1;
+            else
+                throw new IllegalArgumentException(path + " holds an unexpected character in its pattern: " + (char)c);
+
+            prefix = 0;
+            placer.run(x, y, run, state);
+            x += run;
+        }
+
+        return placer;
+    }
+
+    private static Placer loadLife(Grid grid, Reader in, Path path) throws IOException
+    {
+        Placer placer = new Placer(grid, 0, 0, path);
+        boolean header = false;
+        Numbers numbers = new Numbers(in);
+
+        for(int c = numbers.skip(); c != -1; c = numbers.skip())
+        {
+            if(c == '#')
+            {
+                String comment = numbers.line();
+
+                //only the header line matters, it has to be the Life 1.06 one
+                if(!header && !comment.startsWith("Life 1.06"))
+                    throw new IllegalArgumentException(path + " isn't a Life 1.06 pattern");
+
+                header = true;
+                continue;
+            }
+
+            int x = numbers.next(c);
+            int y = numbers.next(numbers.skip());
+            placer.run(x, y, 1, 1);
+        }
+
+        return placer;
+    }
+
+    private static Placer loadPlaintext(Grid grid, Reader in, Path path) throws IOException
+    {
+        //the first pass only measures the pattern, so it can be centered
+        int width = 0;
+        int height = 0;
+
+        try(Reader measure = Files.newBufferedReader(path, StandardCharsets.ISO_8859_1))
+        {
+            int column = 0;
+            boolean comment = false;
+
+            for(int c = measure.read(); c != -1; c = measure.read())
+            {
+                if(c == '\n')
+                {
+                    if(!comment)
+                        height++;
+
+                    column = 0;
+                    comment = false;
+                }
+                else if(column == 0 && c == '!')
+                {
+                    comment = true;
+                    column++;
+                }
+                else if(c != '\r' && !comment)
+                    width = Math.max(width, ++column);
+            }
+
+            if(column > 0 && !comment)
+                height++;
+        }
+
+        Placer placer = new Placer(grid, width, height, path);
+        int x = 0;
+        int y = 0;
+        boolean comment = false;
+
+        for(int c = in.read(); c != -1; c = in.read())
+        {
+            if(c == '\n')
+            {
+                if(!comment)
+                    y++;
+
+                x = 0;
+                comment = false;
+            }
+            else if(x == 0 && c == '!')
+            {
+                comment = true;
+                x++;
+            }
+            else if(c != '\r' && !comment)
+            {
+                if(c == 'O' || c == 'o' || c == '*')
+                    placer.run(x, y, 1, 1);
+                else if(c != '.' && c != ' ')
+                    throw new IllegalArgumentException(path + " holds an unexpected character in its pattern: " + (char)c);
+
+                x++;
+            }
+        }
+
+        return placer;
+    }
+
+    private static void checkRule(Grid grid, String rule, Path path)
+    {
+        Rule own = grid.newCell().getRule();
+
+        if(!(own instanceof OuterTotalisticRule))
+            return;
+
+        boolean same;
+
+        try
+        {
+            same = OuterTotalisticRule.parse(rule).equals(own);
+        } catch (IllegalArgumentException e)
+        {
+            same = false;
+        }
+
+        if(!same)
+            System.err.println(path + " was made for the rule " + rule + ", the cells follow " + own);
+    }
+
+    private static void saveRle(Grid grid, Writer out) throws IOException
+    {
+        int[] bounds = bounds(grid);
+        Rule rule = grid.newCell().getRule();
+        boolean extended = grid.newCell().getStates() > 2;
+
+        out.write("x = " + (bounds[1]-bounds[0]) + ", y = " + (bounds[3]-bounds[2]));
+
+        if(rule instanceof OuterTotalisticRule)
+            out.write(", rule = " + rule);
+
+        out.write('\n');
+
+        RleWriter rle = new RleWriter(out, extended);
+        //the rows that ended without being written yet
+        int rows = 0;
+
+        for(int y = bounds[2]; y < bounds[3]; y++)
+        {
+            int state = 0;
+            int run = 0;
+
+            for(int x = bounds[0]; x < bounds[1]; x++)
+            {
+                int next = grid.getState(x, y);
+
+                if(next != state && run > 0)
+                {
+                    if(rows > 0)
+                        rle.token(rows, -1);
+
+                    rle.token(run, state);
+                    rows = 0;
+                    run = 0;
+                }
+
+                state = next;
+                run++;
+            }
+
+            //the dead cells at the end of a row are left out
+            if(state != 0)
+            {
+                if(rows > 0)
+                    rle.token(rows, -1);
+
+                rle.token(run, state);
+                rows = 0;
+            }
+
+            rows++;
+        }
+
+        rle.end();
+    }
+
+    private static void saveLife(Grid grid, Writer out) throws IOException
+    {
+        int centerX = grid.getWidth()/2;
+        int centerY = grid.getHeight()/2;
+        char[] digits = new char[11];
+
+        out.write("#Life 1.06\n");
+
+        for(int y = 0; y < grid.getHeight(); y++)
+        {
+            for(int x = 0; x < grid.getWidth(); x++)
+            {
+                if(grid.getState(x, y) == 0)
+                    continue;
+
+                number(out, digits, x - centerX);
+                out.write(' ');
+                number(out, digits, y - centerY);
+                out.write('\n');
+            }
+        }
+    }
+
+    private static void savePlaintext(Grid grid, Writer out) throws IOException
+    {
+        int[] bounds = bounds(grid);
+
+        out.write("!Generation " + grid.getGeneration() + "\n");
+
+        for(int y = bounds[2]; y < bounds[3]; y++)
+        {
+            for(int x = bounds[0]; x < bounds[1]; x++)
+                out.write(grid.getState(x, y) != 0 ? 'O' : '.');
+
+            out.write('\n');
+        }
+    }
+
+    /**
+     * @return the smallest rectangle holding every cell that isn't in state 0, as
+     *         {fromX, toX, fromY, toY}, or an empty one if there is no such cell
+     */
+    private static int[] bounds(Grid grid)
+    {
+        int fromX = grid.getWidth();
+        int toX = 0;
+        int fromY = grid.getHeight();
+        int toY = 0;
+
+        for(int y = 0; y < grid.getHeight(); y++)
+        {
+            for(int x = 0; x < grid.getWidth(); x++)
+            {
+                if(grid.getState(x, y) != 0)
+                {
+                    fromX = Math.min(fromX, x);
+                    toX = Math.max(toX, x+1);
+                    fromY = Math.min(fromY, y);
+                    toY = y+1;
+                }
+            }
+        }
+
+        return fromX < toX ? new int[]{fromX, toX, fromY, toY} : new int[4];
+    }
+
+    /**
+     * writes the number without creating a string for it
+     */
+    private static void number(Writer out, char[] digits, int value) throws IOException
+    {
+        if(value < 0)
+            out.write('-');
+
+        long rest = Math.abs((long)value);
+        int start = digits.length;
+
+        do
+        {
+            digits[--start] = (char)('0' + rest % 10);
+            rest /= 10;
+        } while(rest != 0);
+
+        out.write(digits, start, digits.length-start);
+    }
+
+    private enum Format { RLE, LIFE_106, PLAINTEXT }
+
+    /**
+     * Puts the cells of a pattern into the grid, moved so the pattern lies in its middle
+     */
+    private static final class Placer
+    {
+        private final Grid grid;
+        private final int states;
+        private final Path path;
+        private final int offsetX;
+        private final int offsetY;
+        //how many cells were outside the grid
+        private long dropped;
+
+        /**
+         * @param width the width of the pattern, (0|0) of a pattern without one is put in the middle
+         * @param height the height of the pattern
+         */
+        Placer(Grid grid, int width, int height, Path path)
+        {
+            this.grid = grid;
+            this.states = grid.newCell().getStates();
+            this.path = path;
+            this.offsetX = (grid.getWidth() - width)/2;
+            this.offsetY = (grid.getHeight() - height)/2;
+        }
+
+        /**
+         * sets {@code length} cells in the row of the pattern, starting at (x|y), to the given state
+         */
+        void run(int x, int y, int length, int state)
+        {
+            if(state >= states)
+                throw new IllegalArgumentException(path + " holds state " + state + ", the cells only have " + states);
+            if(state == 0)
+                return;
+
+            long row = (long)y + offsetY;
+            long from = (long)x + offsetX;
+            long to = from + length;
+
+            //an unbounded grid keeps the cells it doesn't show
+            if(grid.isUnbounded() && Math.abs(row) <= Integer.MAX_VALUE/2 && Math.abs(from) <= Integer.MAX_VALUE/2 &&
+               Math.abs(to) <= Integer.MAX_VALUE/2)
+            {
+                for(long column = from; column < to; column++)
+                    grid.setUnboundedState((int)column, (int)row, state);
+
+                return;
+            }
+
+            if(row < 0 || row >= grid.getHeight())
+            {
+                dropped += length;
+                return;
+            }
+
+            int clippedFrom = (int)Math.max(from, 0);
+            int clippedTo = (int)Math.min(to, grid.getWidth());
+
+            dropped += length - Math.max(0, clippedTo - clippedFrom);
+
+            for(int column = clippedFrom; column < clippedTo; column++)
+                grid.setState(column, (int)row, state);
+        }
+    }
+
+    /**
+     * Reads whitespace-separated integers from a reader without creating a string for each
+     */
+    private static final class Numbers
+    {
+        private final Reader in;
+
+        Numbers(Reader in) { this.in = in; }
+
+        /**
+         * @return the next character that isn't whitespace, or -1 at the end
+         */
+        int skip() throws IOException
+        {
+            int c = in.read();
+
+            while(c == ' ' || c == '\t' || c == '\r' || c == '\n')
+                c = in.read();
+
+            return c;
+        }
+
+        /**
+         * @return the rest of the current line, for the comments
+         */
+        String line() throws IOException
+        {
+            StringBuilder line = new StringBuilder();
+
+            for(int c = in.read(); c != -1 && c != '\n'; c = in.read())
+                if(c != '\r')
+                    line.append((char)c);
+
+            return line.toString();
+        }
+
+        /**
+         * @param c the first character of the number
+         * @return the number, it ends at the next character that isn't a digit
+         */
+        int next(int c) throws IOException
+        {
+            boolean negative = c == '-';
+
+            if(negative || c == '+')
+                c = in.read();
+            if(c < '0' || c > '9')
+                throw new IllegalArgumentException("Expected a number, not " + (c == -1 ? "the end" : String.valueOf((char)c)));
+
+            long value = 0;
+
+            for(; c >= '0' && c <= '9'; c = in.read())
+                value = Math.min(value*10 + (c-'0'), Integer.MAX_VALUE + 1L);
+
+            return (int)(negative ? -value : Math.min(value, Integer.MAX_VALUE));
+        }
+    }
+
+    /**
+     * Writes the runs of an RLE, breaking the lines before they get longer than {@link #LINE}
+     */
+    private static final class RleWriter
+    {
+        private final Writer out;
+        private final boolean extended;
+        private final char[] token = new char[16];
+        private int column;
+
+        RleWriter(Writer out, boolean extended)
+        {
+            this.out = out;
+            this.extended = extended;
+        }
+
+        /**
+         * @param state the state of the run, or -1 for the end of {@code run} rows
+         */
+        void token(int run, int state) throws IOException
+        {
+            int end = token.length;
+
+            if(state < 0)
+                token[--end] = '$';
+            else if(!extended)
+                token[--end] = state != 0 ? 'o' : 'b';
+            else if(state == 0)
+                token[--end] = '.';
+            else
+            {
+                token[--end] = (char)('A' + (state-1) % 24);
+
+                if(state > 24)
+                    token[--end] = (char)('p' + (state-25) / 24);
+            }
+
+            for(int rest = run; run > 1 && rest != 0; rest /= 10)
+                token[--end] = (char)('0' + rest % 10);
+
+            if(column + token.length-end > LINE)
+            {
+                out.write('\n');
+                column = 0;
+            }
+
+            out.write(token, end, token.length-end);
+            column += token.length-end;
+        }
+
+        void end() throws IOException
+        {
+            out.write("!\n");
+        }
+    }
+}
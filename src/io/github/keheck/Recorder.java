@@ -0,0 +1,257 @@
+package io.github.keheck;
+
+import java.io.BufferedOutputStream;
+import java.io.Closeable;
+import java.io.DataOutputStream;
+import java.io.IOException;
+import java.io.UncheckedIOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.Arrays;
+import java.util.concurrent.ArrayBlockingQueue;
+import java.util.concurrent.BlockingQueue;
+
+/**
+ * Writes every generation of a {@link Grid} to a file (see {@link Initializer#setRecording(Path)}),
+ * which can be replayed with a {@link Recording}.
+ *
+ * The grid hands every generation to {@link #record(Grid, long)} right after it was
+ * stepped. That only copies the states into a free buffer; comparing them to the previous
+ * generation and writing them happens on a background thread. There are only a few buffers,
+ * so when the writer falls behind, stepping waits for it instead of filling up the memory.
+ *
+ * The file is only appended to. After a header (all numbers big-endian)
+ * <pre>
+ * int    magic, "CARC"
+ * short  version, 1
+ * short  0
+ * int    width
+ * int    height
+ * int    number of states
+ * int    generations between two keyframes
+ * </pre>
+ * every generation is a record:
+ * <pre>
+ * byte   0 for a keyframe, 1 for a delta
+ * long   generation
+ * int    length of the data
+ * data   the cells (row by row) that differ from the previous generation, or from
+ *        state 0 for a keyframe: runs of a varint with the number of cells skipped
+ *        since the last run, the varints of {@code new state ^ old state} and a varint 0
+ * </pre>
+ */
+
+final class Recorder implements Closeable
+{
+    static final int MAGIC = 0x43415243;
+    static final short VERSION = 1;
+    static final byte KEYFRAME = 0;
+    static final byte DELTA = 1;
+
+    //how many generations may wait for the writer
+    private static final int QUEUE = 4;
+    //tells the writer to stop
+    private static final Frame END = new Frame();
+
+    private final int width;
+    private final int height;
+    private final int stride;
+    private final int origin;
+    private final int states;
+    private final int keyframeInterval;
+    private final DataOutputStream out;
+    private final BlockingQueue<Frame> free = new ArrayBlockingQueue<>(QUEUE+1);
+    private final BlockingQueue<Frame> full = new ArrayBlockingQueue<>(QUEUE+1);
+    private final Thread writer;
+    //the generation the next delta is based on, only used by the writer
+    private Frame previous;
+    //what a keyframe is compared to
+    private StateBuffer zeros;
+    private int sinceKeyframe;
+    private byte[] data = new byte[1 << 16];
+    private int length;
+    private volatile IOException failure;
+
+    /**
+     * starts a new recording with the current generation of the grid as the first keyframe
+     * @param path the file to record to, an existing file is overwritten
+     * @param keyframeInterval how many generations there are from one keyframe to the next
+     */
+    Recorder(Grid grid, Path path, int keyframeInterval) throws IOException
+    {
+        this.width = grid.getWidth();
+        this.height = grid.getHeight();
+        this.stride = grid.getStride();
+        this.origin = grid.index(0, 0);
+        this.states = grid.newCell().getStates();
+        this.keyframeInterval = keyframeInterval;
+        this.out = new DataOutputStream(new BufferedOutputStream(Files.newOutputStream(path), 1 << 16));
+
+        out.writeInt(MAGIC);
+        out.writeShort(VERSION);
+        out.writeShort(0);
+        out.writeInt(width);
+        out.writeInt(height);
+        out.writeInt(states);
+        out.writeInt(keyframeInterval);
+
+        for(int i = 0; i < QUEUE+1; i++)
+            free.add(new Frame());
+
+        this.writer = new Thread(this::write, "Recorder");
+        writer.setDaemon(true);
+        writer.start();
+
+        record(grid, grid.getGeneration());
+    }
+
+    /**
+     * queues the current generation of the grid, waits if the writer is too far behind
+     * @param generation the number of the generation
+     */
+    void record(Grid grid, long generation)
+    {
+        if(failure != null)
+            throw new UncheckedIOException(failure);
+
+        try
+        {
+            Frame frame = free.take();
+            frame.states = grid.copyStates(frame.states);
+            frame.generation = generation;
+            full.put(frame);
+        } catch (InterruptedException e)
+        {
+            //the generation is lost, but whoever interrupted should find out
+            Thread.currentThread().interrupt();
+        }
+    }
+
+    /**
+     * writes the queued generations and closes the file
+     */
+    @Override
+    public void close() throws IOException
+    {
+        try
+        {
+            full.put(END);
+            writer.join();
+        } catch (InterruptedException e)
+        {
+            Thread.currentThread().interrupt();
+        }
+
+        if(failure != null)
+            throw failure;
+    }
+
+    private void write()
+    {
+        try
+        {
+            for(Frame frame = full.take(); frame != END; frame = full.take())
+            {
+                if(failure == null)
+                {
+                    try
+                    {
+                        write(frame);
+                    } catch (IOException e)
+                    {
+                        //the frames still have to go back, or record() would wait forever
+                        failure = e;
+                    }
+                }
+
+                if(previous != null)
+                    free.add(previous);
+
+                previous = frame;
+            }
+
+            out.close();
+        } catch (IOException e)
+        {
+            if(failure == null)
+                failure = e;
+        } catch (InterruptedException e)
+        {
+            failure = new IOException("The recorder was interrupted", e);
+        }
+    }
+
+    private void write(Frame frame) throws IOException
+    {
+        boolean keyframe = previous == null || ++sinceKeyframe >= keyframeInterval;
+
+        if(keyframe)
+            sinceKeyframe = 0;
+
+        if(keyframe && zeros == null)
+            zeros = StateBuffer.create(frame.states.size, states, frame.states.isOffHeap());
+
+        encode(keyframe ? zeros : previous.states, frame.states);
+
+        out.writeByte(keyframe ? KEYFRAME : DELTA);
+        out.writeLong(frame.generation);
+        out.writeInt(length);
+        out.write(data, 0, length);
+    }
+
+    /**
+     * puts the runs of cells that differ between the two generations into {@link #data}
+     * @param previous the previous generation, or a buffer of zeros
+     */
+    private void encode(StateBuffer previous, StateBuffer states)
+    {
+        length = 0;
+
+        //the cell behind the last run
+        int end = 0;
+
+        for(int y = 0; y < height; y++)
+        {
+            int row = origin + y*stride;
+
+            //the unchanged cells are skipped in bulk, runs end with the row
+            for(int x = states.mismatch(previous, row, row+width) - row; x < width;
+                x = states.mismatch(previous, row+x, row+width) - row)
+            {
+                varint(y*width + x - end);
+
+                do
+                {
+                    varint(states.get(row+x) ^ previous.get(row+x));
+                    x++;
+                } while(x < width && states.get(row+x) != previous.get(row+x));
+
+                varint(0);
+                end = y*width + x;
+            }
+        }
+    }
+
+    private void varint(int value)
+    {
+        if(length+5 > data.length)
+            data = Arrays.copyOf(data, data.length*2);
+
+        while((value & ~0x7F) != 0)
+        {
+            data[length++] = (byte)(value & 0x7F | 0x80);
+            value >>>= 7;
+        }
+
+        data[length++] = (byte)value;
+    }
+
+    /**
+     * A generation waiting for the writer
+     */
+    private static final class Frame
+    {
+        private StateBuffer states;
+        private long generation;
+    }
+}
@@ -0,0 +1,278 @@
+package io.github.keheck;
+
+import java.io.Closeable;
+import java.io.EOFException;
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+import java.util.Arrays;
+
+/**
+ * Replays a file written while recording (see {@link Initializer#setRecording(Path)}).
+ *
+ * When it's opened, only the headers of the records are read to find out which generations
+ * there are and where the keyframes lie. {@link #seek(long)} then starts at the last keyframe
+ * before the generation and applies the deltas up to it, so jumping anywhere only takes
+ * as many deltas as there are between two keyframes. A file that is still being written,
+ * or that was cut off, can be read up to its last complete record.
+ */
+
+public final class Recording implements Closeable
+{
+    //magic, version, 0, width, height, states, keyframe interval
+    private static final int HEADER = 24;
+    //type, generation, length
+    private static final int RECORD = 13;
+
+    private final FileChannel channel;
+    private final int width;
+    private final int height;
+    private final int states;
+    private final int[] cells;
+    //the headers of the records
+    private long[] generations = new long[64];
+    private long[] positions = new long[64];
+    private int[] lengths = new int[64];
+    private boolean[] keyframes = new boolean[64];
+    private int count;
+    //the record the cells are at
+    private int current = -1;
+    private ByteBuffer data = ByteBuffer.allocate(1 << 16);
+
+    private Recording(FileChannel channel) throws IOException
+    {
+        this.channel = channel;
+
+        ByteBuffer header = read(0, HEADER);
+
+        if(header.getInt() != Recorder.MAGIC)
+            throw new IllegalArgumentException("This isn't a recording");
+
+        short version = header.getShort();
+
+        if(version != Recorder.VERSION)
+            throw new IllegalArgumentException("Version " + version + " of the format isn't supported");
+
+        header.getShort();
+        this.width = header.getInt();
+        this.height = header.getInt();
+        this.states = header.getInt();
+        header.getInt();
+
+        if(width < 1 || height < 1)
+            throw new IllegalArgumentException("The header of the recording is broken");
+
+        this.cells = new int[width*height];
+
+        index();
+
+        if(count == 0)
+            throw new IllegalArgumentException("The recording doesn't hold any generation");
+        if(!keyframes[0])
+            throw new IllegalArgumentException("The recording doesn't start with a keyframe");
+
+        next();
+    }
+
+    /**
+     * opens a recording at its first generation
+     * @throws IllegalArgumentException if the file isn't a recording
+     */
+    public static Recording open(Path path) throws IOException
+    {
+        FileChannel channel = FileChannel.open(path, StandardOpenOption.READ);
+
+        try
+        {
+            return new Recording(channel);
+        } catch (IOException | RuntimeException e)
+        {
+            channel.close();
+            throw e;
+        }
+    }
+
+    /**
+     * reads the headers of all complete records
+     */
+    private void index() throws IOException
+    {
+        long size = channel.size();
+        ByteBuffer header = ByteBuffer.allocate(RECORD);
+
+        for(long position = HEADER; position + RECORD <= size; )
+        {
+            header.clear();
+            read(header, position);
+            header.flip();
+
+            byte type = header.get();
+            long generation = header.getLong();
+            int length = header.getInt();
+
+            if(length < 0 || position + RECORD + length > size)
+                break;
+
+            if(count == generations.length)
+            {
+                generations = Arrays.copyOf(generations, count*2);
+                positions = Arrays.copyOf(positions, count*2);
+                lengths = Arrays.copyOf(lengths, count*2);
+                keyframes = Arrays.copyOf(keyframes, count*2);
+            }
+
+            generations[count] = generation;
+            positions[count] = position + RECORD;
+            lengths[count] = length;
+            keyframes[count] = type == Recorder.KEYFRAME;
+            count++;
+
+            position += RECORD + length;
+        }
+    }
+
+    /**
+     * @return the width of the recorded grid
+     */
+    public int getWidth() { return width; }
+
+    /**
+     * @return the height of the recorded grid
+     */
+    public int getHeight() { return height; }
+
+    /**
+     * @return the number of states of the recorded cells
+     */
+    public int getStates() { return states; }
+
+    /**
+     * @return the first recorded generation
+     */
+    public long getFirstGeneration() { return generations[0]; }
+
+    /**
+     * @return the last recorded generation
+     */
+    public long getLastGeneration() { return generations[count-1]; }
+
+    /**
+     * @return the generation the recording is at
+     */
+    public long getGeneration() { return generations[current]; }
+
+    /**
+     * @return the state of the given cell in the generation the recording is at
+     */
+    public int getState(int x, int y) { return cells[y*width + x]; }
+
+    /**
+     * moves to the given generation, or to the last recorded one before it
+     * if it wasn't recorded (e.g. when stepping with {@link Engine#HASHLIFE})
+     * @throws IllegalArgumentException if the generation is before the first recorded one
+     */
+    public void seek(long generation) throws IOException
+    {
+        if(generation < generations[0])
+            throw new IllegalArgumentException("Generation " + generation + " wasn't recorded, the recording starts at " +
+                                               generations[0]);
+
+        //the last record at or before the generation
+        int target = Arrays.binarySearch(generations, 0, count, generation);
+
+        if(target < 0)
+            target = -target - 2;
+
+        int keyframe = target;
+
+        while(!keyframes[keyframe])
+            keyframe--;
+
+        //going on from where the recording is saves decoding the keyframe
+        int from = current >= keyframe && current <= target ? current+1 : keyframe;
+
+        for(int record = from; record <= target; record++)
+            apply(record);
+
+        current = target;
+    }
+
+    /**
+     * moves to the next recorded generation
+     * @return false if the recording is already at the last one
+     */
+    public boolean next() throws IOException
+    {
+        if(current+1 >= count)
+            return false;
+
+        apply(++current);
+        return true;
+    }
+
+    @Override
+    public void close() throws IOException { channel.close(); }
+
+    /**
+     * applies the changes of the given record to the cells
+     */
+    private void apply(int record) throws IOException
+    {
+        if(keyframes[record])
+            Arrays.fill(cells, 0);
+
+        if(data.capacity() < lengths[record])
+            data = ByteBuffer.allocate(Math.max(lengths[record], data.capacity()*2));
+
+        data.clear().limit(lengths[record]);
+        read(data, positions[record]);
+        data.flip();
+
+        int cell = 0;
+
+        while(data.hasRemaining())
+        {
+            cell += varint(data);
+
+            for(int difference = varint(data); difference != 0; difference = varint(data))
+                cells[cell++] ^= difference;
+        }
+    }
+
+    private static int varint(ByteBuffer data)
+    {
+        int value = 0;
+
+        for(int shift = 0; ; shift += 7)
+        {
+            byte b = data.get();
+            value |= (b & 0x7F) << shift;
+
+            if(b >= 0)
+                return value;
+        }
+    }
+
+    private ByteBuffer read(long position, int length) throws IOException
+    {
+        ByteBuffer buffer = ByteBuffer.allocate(length);
+        read(buffer, position);
+        buffer.flip();
+        return buffer;
+    }
+
+    private void read(ByteBuffer buffer, long position) throws IOException
+    {
+        while(buffer.hasRemaining())
+        {
+            int read = channel.read(buffer, position);
+
+            if(read < 0)
+                throw new EOFException("The recording is cut off");
+
+            position += read;
+        }
+    }
+}
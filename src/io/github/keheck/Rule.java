@@ -0,0 +1,317 @@
+package io.github.keheck;
+
+import java.util.Arrays;
+import java.util.function.IntBinaryOperator;
+import java.util.function.IntUnaryOperator;
+import java.util.function.ToIntFunction;
+
+/**
+ * A ruleset declared as data instead of code (see {@link Cell#getRule()}).
+ * When it is created, the rule is compiled into a flat lookup table, indexed
+ * by an encoding of the cell and its neighbourhood, so {@link Engine#TABLE}
+ * only has to sum or encode the neighbours and look up the next state.
+ *
+ * There are three kinds of rules:
+ * <ul>
+ *     <li>{@link #totalistic(int, IntUnaryOperator)}: the next state depends on the
+ *         sum of the states of the cell and its neighbours</li>
+ *     <li>{@link #outerTotalistic(int, IntBinaryOperator)}: the next state depends on
+ *         the state of the cell and the sum of the states of its neighbours
+ *         ({@link OuterTotalisticRule} is the two-state B/S variant)</li>
+ *     <li>{@link #configurations(int, ToIntFunction)}: the next state depends on the
+ *         states of the cell and each of its neighbours</li>
+ * </ul>
+ * Every state has to be between 0 and {@code states-1}, a function returning any
+ * other state is rejected with an IllegalArgumentException while the rule is compiled.
+ * A cell declaring a rule has to have as many states as the rule. The size of the table depends
+ * on the number of neighbours, so a rule is compiled for a {@link NeighbourhoodShape}
+ * ({@link NeighbourhoodShape#MOORE} unless another one is given) and only works with it.
+ */
+
+public class Rule
+{
+    //the biggest table a rule may compile to
+    private static final int MAX_TABLE = 1 << 24;
+
+    enum Kind { TOTALISTIC, OUTER_TOTALISTIC, LIFE_LIKE, CONFIGURATIONS }
+
+    private final Kind kind;
+    private final NeighbourhoodShape shape;
+    private final int states;
+    private final int[] table;
+    //what a neighbour's state (or whether it's alive, for LIFE_LIKE) is multiplied with in the index
+    private final int[] weights;
+    //the index distance between two states of the cell itself
+    private final int stride;
+
+    /**
+     * copies the given rule, e.g. to step it in another way
+     */
+    Rule(Rule rule) { this(rule.kind, rule.shape, rule.states, rule.table); }
+
+    /**
+     * @throws IllegalArgumentException if the table holds a state the rule doesn't have
+     */
+    Rule(Kind kind, NeighbourhoodShape shape, int states, int[] table)
+    {
+        //the engines look up the next index with it, so it has to be one of the states
+        for(int index = 0; index < table.length; index++)
+            if(table[index] < 0 || table[index] >= states)
+                throw new IllegalArgumentException("The rule maps entry " + index + " of its table to state " + table[index] +
+                                                   ", it only has the states 0 to " + (states-1));
+
+        this.kind = kind;
+        this.shape = shape;
+        this.states = states;
+        this.table = table;
+        this.weights = new int[shape.size()];
+
+        switch(kind)
+        {
+            case TOTALISTIC: stride = 1; break;
+            case OUTER_TOTALISTIC: stride = shape.size()*(states-1) + 1; break;
+            case LIFE_LIKE: stride = shape.size() + 1; break;
+            default: stride = 1; break;
+        }
+
+        for(int i = 0, weight = kind == Kind.CONFIGURATIONS ? states : 1; i < weights.length; i++)
+        {
+            weights[i] = weight;
+
+            if(kind == Kind.CONFIGURATIONS)
+                weight *= states;
+        }
+    }
+
+    /**
+     * @param states the number of states
+     * @param next maps the sum of the states of the cell and its neighbours to the next state
+     * @return the compiled rule
+     */
+    public static Rule totalistic(int states, IntUnaryOperator next)
+    {
+        return totalistic(NeighbourhoodShape.MOORE, states, next);
+    }
+
+    /**
+     * @param shape the neighbourhood the rule is used with
+     * @param states the number of states
+     * @param next maps the sum of the states of the cell and its neighbours to the next state
+     * @return the compiled rule
+     */
+    public static Rule totalistic(NeighbourhoodShape shape, int states, IntUnaryOperator next)
+    {
+        int[] table = new int[size(states, (long)(shape.size()+1)*(states-1) + 1)];
+
+        for(int sum = 0; sum < table.length; sum++)
+            table[sum] = next.applyAsInt(sum);
+
+        return new Rule(Kind.TOTALISTIC, shape, states, table);
+    }
+
+    /**
+     * @param states the number of states
+     * @param next maps the state of the cell and the sum of the states of its neighbours to the next state
+     * @return the compiled rule
+     */
+    public static Rule outerTotalistic(int states, IntBinaryOperator next)
+    {
+        return outerTotalistic(NeighbourhoodShape.MOORE, states, next);
+    }
+
+    /**
+     * @param shape the neighbourhood the rule is used with
+     * @param states the number of states
+     * @param next maps the state of the cell and the sum of the states of its neighbours to the next state
+     * @return the compiled rule
+     */
+    public static Rule outerTotalistic(NeighbourhoodShape shape, int states, IntBinaryOperator next)
+    {
+        int sums = shape.size()*(states-1) + 1;
+        int[] table = new int[size(states, (long)states*sums)];
+
+        for(int state = 0; state < states; state++)
+            for(int sum = 0; sum < sums; sum++)
+                table[state*sums + sum] = next.applyAsInt(state, sum);
+
+        return new Rule(Kind.OUTER_TOTALISTIC, shape, states, table);
+    }
+
+    /**
+     * Only feasible for few states, since there is an entry for every possible neighbourhood
+     * (states^9 of them).
+     * @param states the number of states
+     * @param next maps the states of the cell (index 0) and its neighbours (index 1 to 8, in the
+     *             order of {@link NeighbourhoodShape#MOORE}) to the next state. The array is reused.
+     * @return the compiled rule
+     */
+    public static Rule configurations(int states, ToIntFunction<int[]> next)
+    {
+        return configurations(NeighbourhoodShape.MOORE, states, next);
+    }
+
+    /**
+     * Only feasible for few states and neighbours, since there is an entry for every
+     * possible neighbourhood (states^(neighbours+1) of them).
+     * @param shape the neighbourhood the rule is used with
+     * @param states the number of states
+     * @param next maps the states of the cell (index 0) and its neighbours (index 1 and up, in the
+     *             order of the shape) to the next state. The array is reused.
+     * @return the compiled rule
+     */
+    public static Rule configurations(NeighbourhoodShape shape, int states, ToIntFunction<int[]> next)
+    {
+        long size = 1;
+
+        for(int i = 0; i <= shape.size(); i++)
+            size = Math.min(size*states, MAX_TABLE + 1L);
+
+        int[] table = new int[size(states, size)];
+        int[] configuration = new int[shape.size()+1];
+
+        for(int index = 0; index < table.length; index++)
+        {
+            for(int i = 0, rest = index; i < configuration.length; i++, rest /= states)
+                configuration[i] = rest % states;
+
+            table[index] = next.applyAsInt(configuration);
+        }
+
+        return new Rule(Kind.CONFIGURATIONS, shape, states, table);
+    }
+
+    private static int size(int states, long size)
+    {
+        if(states < 1)
+            throw new IllegalArgumentException("A rule needs at least one state");
+        if(size > MAX_TABLE)
+            throw new IllegalArgumentException("The rule would need a table with " + size + " entries, use less states");
+
+        return (int)size;
+    }
+
+    /**
+     * @return the number of states
+     */
+    public int getStates() { return states; }
+
+    /**
+     * @return the neighbourhood the rule was compiled for
+     */
+    public NeighbourhoodShape getShape() { return shape; }
+
+    Kind getKind() { return kind; }
+
+    /**
+     * @return the table the next states are looked up in, not a copy
+     */
+    int[] getTable() { return table; }
+
+    /**
+     * @return what the state of each neighbour is multiplied with in the index of the table
+     */
+    int[] getWeights() { return weights.clone(); }
+
+    /**
+     * @return what the state of the cell itself is multiplied with in the index of the table
+     */
+    int getSelfWeight() { return stride; }
+
+    /**
+     * @return the rule stepping whole rows at once with the Vector API if it's there (see
+     *         {@link Engine#VECTOR}), otherwise this one
+     */
+    Rule vectorized()
+    {
+        try
+        {
+            //loading VectorRule on its own fails on a JVM without the module or older than Java 17
+            Class.forName("jdk.incubator.vector.IntVector");
+            return (Rule)Class.forName("io.github.keheck.VectorRule").getDeclaredMethod("of", Rule.class).invoke(null, this);
+        } catch (ReflectiveOperationException | LinkageError e)
+        {
+            return this;
+        }
+    }
+
+    /**
+     * @return the next state of a cell in the given state and neighbourhood
+     */
+    int next(int state, Neighbourhood neighbours)
+    {
+        int index = self(state);
+
+        for(int i = 0; i < weights.length; i++)
+            index += weights[i] * neighbour(neighbours.getNeighbour(i));
+
+        return table[index];
+    }
+
+    /**
+     * Applies the rule to a rectangle of cells. The halo around the cells has to be
+     * filled (see {@link Grid#fillHalo(StateBuffer, Channels)}), so no neighbour is out of bounds.
+     * @param origin the index of the cell at (0|0)
+     * @param stride the index distance between two rows
+     * @param deltas the index distances to the neighbours (see {@link NeighbourhoodShape#deltas(int)})
+     * @return whether any of the cells changed its state
+     */
+    boolean step(StateBuffer from, StateBuffer to, int origin, int stride, int[] deltas, int fromX, int toX, int fromY, int toY)
+    {
+        boolean changed = false;
+
+        for(int y = fromY; y < toY; y++)
+        {
+            int row = origin + y*stride;
+
+            for(int x = fromX; x < toX; x++)
+            {
+                int cell = row + x;
+                int state = from.get(cell);
+                int index = self(state);
+
+                if(kind == Kind.CONFIGURATIONS)
+                {
+                    for(int i = 0; i < deltas.length; i++)
+                        index += weights[i] * from.get(cell + deltas[i]);
+                }
+                else if(kind == Kind.LIFE_LIKE)
+                {
+                    for(int i = 0; i < deltas.length; i++)
+                        if(from.get(cell + deltas[i]) != 0)
+                            index++;
+                }
+                else
+                {
+                    for(int i = 0; i < deltas.length; i++)
+                        index += from.get(cell + deltas[i]);
+                }
+
+                int next = table[index];
+                to.set(cell, next);
+                changed |= next != state;
+            }
+        }
+
+        return changed;
+    }
+
+    /**
+     * @return a description of the rule that is the same for rules with the same table
+     */
+    @Override
+    public String toString()
+    {
+        return kind.name().toLowerCase() + " rule, " + states + " states, " + shape.size() + " neighbours, table " +
+               Integer.toHexString(Arrays.hashCode(table));
+    }
+
+    private int self(int state)
+    {
+        return (kind == Kind.LIFE_LIKE ? (state != 0 ? 1 : 0) : state) * stride;
+    }
+
+    private int neighbour(int state)
+    {
+        return kind == Kind.LIFE_LIKE ? (state != 0 ? 1 : 0) : state;
+    }
+}
@@ -0,0 +1,47 @@
+package io.github.keheck;
+
+import java.awt.*;
+import java.nio.file.Path;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.function.Supplier;
+
+/**
+ * Holds everything set through the {@link Initializer}. It doesn't depend on
+ * Processing, so the {@link Simulation} can read it without a window.
+ */
+
+final class Settings
+{
+    static Class<? extends Cell> clazz = ExampleCell.class;
+    //builds the cells instead of the constructor of clazz, if set
+    static Supplier<? extends Cell> cellFactory = null;
+    static int tickLength = 100;
+    static int gridHeight = 50;
+    static int gridWidth = 50;
+    static int cellSize = 15;
+    static Color bgColor = new Color(100, 100, 100);
+    static int threads = 1;
+    static int tileSize = 64;
+    static boolean changeTracking = false;
+    static Engine engine = Engine.AUTO;
+    static int hashLifeStep = 0;
+    static int hashLifeNodes = 1 << 22;
+    static NeighbourhoodShape shape = NeighbourhoodShape.MOORE;
+    static Boundary boundary = Boundary.TRUNCATED;
+    static int boundaryState = 0;
+    static Downsampling downsampling = Downsampling.MEAN;
+    static Path initialState = null;
+    static Path recording = null;
+    static int keyframeInterval = 100;
+    static boolean metrics = false;
+    static boolean offHeap = false;
+    static int cycleHistory = 0;
+    static List<MetricsListener> metricsListeners = new ArrayList<>();
+    static boolean isRunning = false;
+    static boolean random = true;
+    static Long seed = null;
+    static double[] distribution = null;
+
+    private Settings() {}
+}
@@ -0,0 +1,298 @@
+package io.github.keheck;
+
+import java.io.IOException;
+import java.io.UncheckedIOException;
+import java.nio.file.Path;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+import java.util.function.Supplier;
+
+/**
+ * Steps a grid without opening a window, e.g. for parameter sweeps on a server.
+ * There is no frame pacing: the generations are computed one after the other,
+ * as fast as the CPU allows. Apart from the arguments, the settings made
+ * through the {@link Initializer} are used (e.g. {@link Initializer#setRandom(boolean)}
+ * and {@link Initializer#setThreads(int)}); {@link Initializer#finish()} doesn't
+ * have to be called. If {@link Initializer#setRecording(Path)} is set, every
+ * generation that is stepped is recorded, with {@link Initializer#setMetrics(boolean)}
+ * the grid is measured. With {@link Initializer#setCycleDetection(int)}, the generations are
+ * only stepped until the grid stops changing or starts repeating itself; the rest of them would
+ * only repeat the cycle, so just as many are stepped as are left over after its last full period.
+ * A recorded grid is stepped to the end anyway, so the recording has every generation.
+ */
+
+public final class Simulation
+{
+    private Simulation() {}
+
+    /**
+     * @param clazz the class inheriting {@link Cell}
+     * @param width the width of the grid (in cells)
+     * @param height the height of the grid (in cells)
+     * @param generations how many generations to step
+     * @return the state after the last generation
+     */
+    public static Result run(Class<? extends Cell> clazz, int width, int height, long generations)
+    {
+        return run(clazz, width, height, generations, false);
+    }
+
+    /**
+     * @param clazz the class inheriting {@link Cell}
+     * @param width the width of the grid (in cells)
+     * @param height the height of the grid (in cells)
+     * @param generations how many generations to step
+     * @param statistics whether a {@link Statistics} should be recorded for every generation
+     * @return the state after the last generation
+     */
+    public static Result run(Class<? extends Cell> clazz, int width, int height, long generations, boolean statistics)
+    {
+        return run(Grid.factory(clazz), width, height, generations, statistics);
+    }
+
+    /**
+     * @param factory builds the cells instead of the constructor of their class (see {@link Initializer#setCellFactory(Supplier)})
+     * @param width the width of the grid (in cells)
+     * @param height the height of the grid (in cells)
+     * @param generations how many generations to step
+     * @param statistics whether a {@link Statistics} should be recorded for every generation
+     * @return the state after the last generation
+     */
+    public static Result run(Supplier<? extends Cell> factory, int width, int height, long generations, boolean statistics)
+    {
+        Grid grid = new Grid(width, height, factory);
+
+        if(Settings.initialState != null)
+        {
+            try
+            {
+                if(PatternFile.isPattern(Settings.initialState))
+                    PatternFile.load(grid, Settings.initialState);
+                else
+                    GridFile.load(grid, Settings.initialState);
+            } catch (IOException e)
+            {
+                throw new UncheckedIOException(e);
+            }
+        }
+        else if(Settings.random)
+            grid.randomize();
+
+        return run(grid, generations, statistics);
+    }
+
+    /**
+     * Steps a saved grid and saves the result, without copying the states anywhere
+     * else, so it also works for grids that barely fit into memory.
+     * @param clazz the class inheriting {@link Cell}
+     * @param from a grid saved by this method or by pressing 'w' in the window
+     * @param generations how many generations to step
+     * @param to where to save the grid after the last generation (may be {@code from}),
+     *           or a pattern file (see {@link Initializer#setInitialState(Path)}) to export it
+     */
+    public static void run(Class<? extends Cell> clazz, Path from, long generations, Path to) throws IOException
+    {
+        GridFile.Header header = GridFile.Header.read(from);
+        Grid grid = new Grid(header.width, header.height, clazz);
+
+        GridFile.load(grid, from);
+        step(grid, generations, null);
+
+        if(PatternFile.isPattern(to))
+            PatternFile.save(grid, to);
+        else
+            GridFile.save(grid, to);
+    }
+
+    static Result run(Grid grid, long generations, boolean statistics)
+    {
+        List<Statistics> stats = statistics ? new ArrayList<>() : Collections.emptyList();
+        CycleDetector cycles;
+
+        try
+        {
+            cycles = step(grid, generations, statistics ? stats : null);
+        } catch (IOException e)
+        {
+            throw new UncheckedIOException(e);
+        }
+
+        int[] states = new int[grid.getWidth()*grid.getHeight()];
+
+        for(int y = 0; y < grid.getHeight(); y++)
+            for(int x = 0; x < grid.getWidth(); x++)
+                states[y*grid.getWidth() + x] = grid.getState(x, y);
+
+        return new Result(grid.getWidth(), grid.getHeight(), generations, states, Collections.unmodifiableList(stats),
+                          cycles != null ? cycles.getPeriod() : 0, cycles != null ? cycles.getStart() : -1);
+    }
+
+    /**
+     * steps the grid with the metrics, the recording and the cycle detection of the settings
+     * @param statistics gets a {@link Statistics} for every update, or {@code null}
+     * @return what the cycle detection found, or {@code null} if it's off
+     */
+    private static CycleDetector step(Grid grid, long generations, List<Statistics> statistics) throws IOException
+    {
+        long last = grid.getGeneration() + generations;
+
+        Metrics.attach(grid);
+        CycleDetector cycles = CycleDetector.attach(grid);
+
+        try(Recorder recorder = record(grid))
+        {
+            //otherwise every update has to be looked at
+            if(statistics == null && cycles == null)
+                grid.update(generations);
+
+            while(grid.getGeneration() < last)
+            {
+                long start = System.nanoTime();
+                grid.update(Math.min(grid.getGenerationsPerUpdate(), last - grid.getGeneration()));
+                long nanos = System.nanoTime() - start;
+
+                if(statistics != null)
+                    statistics.add(new Statistics(grid.getGeneration(), nanos, grid.getEvaluatedCells(), grid.getChangedCells(), grid.getPopulation()));
+
+                if(cycles != null && cycles.isCycling() && recorder == null)
+                {
+                    //the generation at the end is the same as the one this far into the cycle
+                    long left = (last - grid.getGeneration()) % cycles.getPeriod();
+
+                    if(left > 0)
+                        grid.update(left);
+
+                    grid.setGeneration(last);
+                }
+            }
+        }
+
+        return cycles;
+    }
+
+    /**
+     * @return a recorder that gets every generation of the grid, or {@code null} if nothing is recorded
+     */
+    private static Recorder record(Grid grid) throws IOException
+    {
+        if(Settings.recording == null)
+            return null;
+
+        Recorder recorder = new Recorder(grid, Settings.recording, Settings.keyframeInterval);
+        grid.setRecorder(recorder);
+        return recorder;
+    }
+
+    /**
+     * The state of the grid after the last generation of a {@link Simulation}
+     */
+    public static final class Result
+    {
+        private final int width;
+        private final int height;
+        private final long generations;
+        private final int[] states;
+        private final List<Statistics> statistics;
+        private final long period;
+        private final long cycleStart;
+
+        private Result(int width, int height, long generations, int[] states, List<Statistics> statistics,
+                       long period, long cycleStart)
+        {
+            this.width = width;
+            this.height = height;
+            this.generations = generations;
+            this.states = states;
+            this.statistics = statistics;
+            this.period = period;
+            this.cycleStart = cycleStart;
+        }
+
+        public int getWidth() { return width; }
+
+        public int getHeight() { return height; }
+
+        /**
+         * @return how many generations were stepped
+         */
+        public long getGenerations() { return generations; }
+
+        /**
+         * @return the state of the cell at (x|y)
+         */
+        public int getState(int x, int y) { return states[y*width + x]; }
+
+        /**
+         * @return a copy of all states, row by row (the cell at (x|y) is at {@code y*width + x})
+         */
+        public int[] getStates() { return states.clone(); }
+
+        /**
+         * @return one entry per generation, or an empty list if no statistics were recorded
+         */
+        public List<Statistics> getStatistics() { return statistics; }
+
+        /**
+         * @return how many generations the cycle the grid ended up in takes (1 if it stopped changing,
+         *         with {@link Engine#HASHLIFE} a multiple of the generations it steps at once),
+         *         or 0 if none was found (see {@link Initializer#setCycleDetection(int)})
+         */
+        public long getPeriod() { return period; }
+
+        /**
+         * @return the first generation of the cycle (with {@link Engine#HASHLIFE} the first one it
+         *         stepped to), or -1 if none was found; the statistics end shortly after it, since
+         *         the generations after it weren't stepped
+         */
+        public long getCycleStart() { return cycleStart; }
+    }
+
+    /**
+     * What happened during a single generation
+     */
+    public static final class Statistics
+    {
+        private final long generation;
+        private final long nanos;
+        private final int evaluatedCells;
+        private final int changedCells;
+        private final int population;
+
+        private Statistics(long generation, long nanos, int evaluatedCells, int changedCells, int population)
+        {
+            this.generation = generation;
+            this.nanos = nanos;
+            this.evaluatedCells = evaluatedCells;
+            this.changedCells = changedCells;
+            this.population = population;
+        }
+
+        /**
+         * @return the number of the generation, starting at 1 (with {@link Engine#HASHLIFE}, a
+         * statistic covers {@link Initializer#setHashLifeStep(int) 2^k} generations)
+         */
+        public long getGeneration() { return generation; }
+
+        /**
+         * @return how long the step took in nanoseconds
+         */
+        public long getNanos() { return nanos; }
+
+        /**
+         * @return how many cells the ruleset was applied to (less than all of them
+         * with {@link Initializer#setChangeTracking(boolean)})
+         */
+        public int getEvaluatedCells() { return evaluatedCells; }
+
+        /**
+         * @return how many cells changed their state
+         */
+        public int getChangedCells() { return changedCells; }
+
+        /**
+         * @return how many cells are not in state 0 afterwards
+         */
+        public int getPopulation() { return population; }
+    }
+}
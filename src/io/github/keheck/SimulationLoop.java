@@ -0,0 +1,168 @@
+package io.github.keheck;
+
+import java.util.concurrent.LinkedBlockingQueue;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+
+/**
+ * Steps a {@link Grid} on its own thread, so a slow generation doesn't stall the
+ * window and the frame rate doesn't limit how fast the grid is stepped.
+ *
+ * The generations are handed to the drawing thread through a triple buffer of
+ * {@link Snapshot}s: the loop fills the back one and swaps it with the middle one,
+ * {@link #acquire()} swaps the front one with the middle one whenever there is a new
+ * generation. The swaps are atomic, so neither side ever waits for the other.
+ *
+ * Everything else that touches the grid (editing cells, stepping once, changing the mode)
+ * is queued with {@link #post(Runnable)} and runs on the loop's thread between two generations.
+ */
+
+final class SimulationLoop implements Runnable
+{
+    //the modes, see CellularAutomatonAPI#simMode
+    static final int STOPPED = 0;
+    static final int TICK = 1;
+    static final int STEP = 2;
+    static final int MAX_SPEED = 3;
+
+    //set next to the index of the middle snapshot while the drawing thread hasn't seen it
+    private static final int FRESH = 4;
+
+    private final Grid grid;
+    private final long tickNanos;
+    private final Snapshot[] snapshots = new Snapshot[3];
+    private final AtomicInteger middle = new AtomicInteger(1);
+    //only used by the loop
+    private int back = 0;
+    //only used by the drawing thread
+    private int front = 2;
+    private final LinkedBlockingQueue<Runnable> commands = new LinkedBlockingQueue<>();
+    //only used by the loop
+    private int mode = STOPPED;
+    private Thread thread;
+
+    /**
+     * @param tickLength how many milliseconds a generation takes in {@link #TICK} mode
+     */
+    SimulationLoop(Grid grid, int tickLength)
+    {
+        this.grid = grid;
+        this.tickNanos = TimeUnit.MILLISECONDS.toNanos(tickLength);
+
+        for(int i = 0; i < snapshots.length; i++)
+            snapshots[i] = new Snapshot(grid);
+
+        publish(true);
+    }
+
+    /**
+     * starts stepping the grid on a new thread, after this the grid must only be touched through {@link #post(Runnable)}
+     */
+    void start()
+    {
+        thread = new Thread(this, "Simulation");
+        thread.setDaemon(true);
+        thread.start();
+    }
+
+    /**
+     * stops stepping the grid and waits until the generation being stepped is done
+     */
+    void stop()
+    {
+        if(thread == null)
+            return;
+
+        thread.interrupt();
+
+        try
+        {
+            thread.join();
+        } catch (InterruptedException e)
+        {
+            Thread.currentThread().interrupt();
+        }
+    }
+
+    /**
+     * runs the given command on the loop's thread before the next generation
+     */
+    void post(Runnable command) { commands.add(command); }
+
+    /**
+     * @param mode {@link #STOPPED}, {@link #TICK}, {@link #STEP} or {@link #MAX_SPEED}
+     */
+    void setMode(int mode) { post(() -> this.mode = mode); }
+
+    /**
+     * steps a single generation
+     */
+    void step() { post(grid::update); }
+
+    /**
+     * only to be called from the drawing thread
+     * @return the latest generation that was published, it stays the same until the next call
+     */
+    Snapshot acquire()
+    {
+        if((middle.get() & FRESH) != 0)
+            front = middle.getAndSet(front) & ~FRESH;
+
+        return snapshots[front];
+    }
+
+    /**
+     * copies the grid into the back snapshot and makes it the middle one
+     * @param always whether to publish it even if the drawing thread didn't pick up the last one
+     */
+    private void publish(boolean always)
+    {
+        //it would only draw one of them anyway
+        if(!always && (middle.get() & FRESH) != 0)
+            return;
+
+        snapshots[back].copy(grid);
+        back = middle.getAndSet(back | FRESH) & ~FRESH;
+    }
+
+    @Override
+    public void run()
+    {
+        long nextTick = System.nanoTime();
+
+        try
+        {
+            //polling without waiting doesn't notice an interrupt
+            while(!Thread.currentThread().isInterrupted())
+            {
+                long wait = mode == TICK ? nextTick - System.nanoTime() : mode == MAX_SPEED ? 0 : Long.MAX_VALUE;
+                Runnable command = wait > 0 ? commands.poll(wait, TimeUnit.NANOSECONDS) : commands.poll();
+
+                if(command != null)
+                {
+                    do
+                        command.run();
+                    while((command = commands.poll()) != null);
+
+                    publish(true);
+                }
+                else if(mode == TICK)
+                {
+                    grid.update();
+                    publish(true);
+                    //keeps the rate, unless a generation takes longer than a tick
+                    nextTick = Math.max(nextTick + tickNanos, System.nanoTime());
+                }
+                else if(mode == MAX_SPEED)
+                {
+                    //intermediate generations are skipped as long as the drawing thread is busy
+                    grid.update();
+                    publish(false);
+                }
+            }
+        } catch (InterruptedException e)
+        {
+            //the thread was asked to stop
+        }
+    }
+}
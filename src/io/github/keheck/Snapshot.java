@@ -0,0 +1,65 @@
+package io.github.keheck;
+
+/**
+ * A copy of the states (and the {@link Channel}s) of a {@link Grid}, made by the {@link SimulationLoop} so
+ * the {@link GridRenderer} can draw a generation while the next one is computed.
+ * The loop never touches a snapshot the drawing thread holds, so it doesn't
+ * change while it's drawn.
+ */
+
+final class Snapshot
+{
+    private final int width;
+    private final int height;
+    private final StateBuffer states;
+    //null if the cells don't declare channels
+    private final Channels channels;
+    private long generation;
+    private long modifications = -1;
+
+    Snapshot(Grid grid)
+    {
+        this.width = grid.getWidth();
+        this.height = grid.getHeight();
+        this.states = StateBuffer.create(width*height, grid.newCell().getStates(), grid.isOffHeap());
+        this.channels = grid.hasChannels() ? new Channels(grid.newCell().getChannels(), width*height) : null;
+    }
+
+    /**
+     * copies the current generation of the grid, it has to be the one the snapshot was made for
+     */
+    void copy(Grid grid)
+    {
+        grid.copyCells(states);
+
+        if(channels != null)
+            grid.copyChannels(channels);
+
+        generation = grid.getGeneration();
+        modifications = grid.getModifications();
+    }
+
+    int getWidth() { return width; }
+
+    int getHeight() { return height; }
+
+    /**
+     * @return the state of the cell at (x|y)
+     */
+    int getState(int x, int y) { return states.get(y*width + x); }
+
+    /**
+     * @return the channels of every cell, row by row, or {@code null} if the cells don't declare any
+     */
+    Channels getChannels() { return channels; }
+
+    /**
+     * @return the generation that was copied
+     */
+    long getGeneration() { return generation; }
+
+    /**
+     * @return {@link Grid#getModifications()} at the time of the copy
+     */
+    long getModifications() { return modifications; }
+}
@@ -0,0 +1,265 @@
+package io.github.keheck;
+
+import java.io.BufferedInputStream;
+import java.io.BufferedOutputStream;
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.IOException;
+import java.io.InterruptedIOException;
+import java.net.ConnectException;
+import java.net.InetSocketAddress;
+import java.net.ServerSocket;
+import java.net.Socket;
+import java.net.SocketTimeoutException;
+import java.nio.ByteBuffer;
+import java.util.concurrent.ArrayBlockingQueue;
+import java.util.concurrent.BlockingQueue;
+import java.util.concurrent.LinkedBlockingQueue;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * A {@link Transport} over TCP sockets, so the workers of a {@link Partition} can run in
+ * separate processes (on one machine through the loopback interface, or on several).
+ *
+ * Worker i listens on {@code basePort + i}; every worker connects to the ones with a lower
+ * rank and accepts the ones with a higher rank, so every pair of workers shares one socket.
+ * A message is an int with its length followed by its bytes. Every socket has a thread that
+ * reads the incoming messages into a queue, so sending never waits for the other worker to
+ * receive and two workers can send to each other at the same time.
+ */
+
+public final class SocketTransport implements Transport
+{
+    //how long to wait for the other workers to show up
+    private static final long CONNECT_TIMEOUT = TimeUnit.SECONDS.toMillis(60);
+    //how many buffers a connection keeps for reuse
+    private static final int SPARE = 4;
+
+    private final int rank;
+    private final Connection[] connections;
+
+    private SocketTransport(int rank, int workers)
+    {
+        this.rank = rank;
+        this.connections = new Connection[workers];
+    }
+
+    /**
+     * connects to all other workers, waits until they are there
+     * @param rank the number of this worker
+     * @param workers how many workers there are
+     * @param host where the workers listen, e.g. "localhost"
+     * @param basePort the port of worker 0, worker i listens on {@code basePort + i}
+     */
+    public static SocketTransport connect(int rank, int workers, String host, int basePort) throws IOException
+    {
+        if(rank < 0 || rank >= workers)
+            throw new IllegalArgumentException("The rank has to be between 0 and " + (workers-1));
+
+        SocketTransport transport = new SocketTransport(rank, workers);
+        long deadline = System.currentTimeMillis() + CONNECT_TIMEOUT;
+
+        try(ServerSocket server = new ServerSocket())
+        {
+            server.setReuseAddress(true);
+            server.bind(new InetSocketAddress(host, basePort + rank));
+
+            for(int worker = 0; worker < rank; worker++)
+                transport.add(worker, connect(new InetSocketAddress(host, basePort + worker), deadline));
+
+            for(int accepted = rank+1; accepted < workers; accepted++)
+            {
+                server.setSoTimeout((int)Math.max(1, deadline - System.currentTimeMillis()));
+
+                Socket socket;
+
+                try
+                {
+                    socket = server.accept();
+                } catch (SocketTimeoutException e)
+                {
+                    throw new IOException("Not all workers connected to worker " + rank, e);
+                }
+
+                int worker = new DataInputStream(socket.getInputStream()).readInt();
+
+                if(worker <= rank || worker >= workers || transport.connections[worker] != null)
+                {
+                    socket.close();
+                    throw new IOException("Worker " + rank + " was connected to by an unexpected worker " + worker);
+                }
+
+                transport.add(worker, socket);
+            }
+        } catch (IOException | RuntimeException e)
+        {
+            transport.close();
+            throw e;
+        }
+
+        return transport;
+    }
+
+    /**
+     * connects to a worker with a lower rank, retrying until it listens
+     */
+    private static Socket connect(InetSocketAddress address, long deadline) throws IOException
+    {
+        while(true)
+        {
+            try
+            {
+                return new Socket(address.getAddress(), address.getPort());
+            } catch (ConnectException e)
+            {
+                if(System.currentTimeMillis() > deadline)
+                    throw new IOException("Couldn't connect to the worker at " + address, e);
+
+                try
+                {
+                    Thread.sleep(50);
+                } catch (InterruptedException interrupted)
+                {
+                    Thread.currentThread().interrupt();
+                    throw new InterruptedIOException("Interrupted while connecting to " + address);
+                }
+            }
+        }
+    }
+
+    private void add(int worker, Socket socket) throws IOException
+    {
+        socket.setTcpNoDelay(true);
+        connections[worker] = new Connection(worker, socket);
+
+        //the worker that accepts has to find out who connected
+        if(worker < rank)
+        {
+            connections[worker].out.writeInt(rank);
+            connections[worker].out.flush();
+        }
+
+        connections[worker].reader.start();
+    }
+
+    @Override
+    public int getRank() { return rank; }
+
+    @Override
+    public int getWorkers() { return connections.length; }
+
+    @Override
+    public void send(int worker, ByteBuffer message) throws IOException
+    {
+        Connection connection = connections[worker];
+
+        synchronized(connection)
+        {
+            connection.out.writeInt(message.remaining());
+
+            if(message.hasArray())
+            {
+                connection.out.write(message.array(), message.arrayOffset() + message.position(), message.remaining());
+                message.position(message.limit());
+            }
+            else
+            {
+                while(message.hasRemaining())
+                    connection.out.write(message.get());
+            }
+
+            connection.out.flush();
+        }
+    }
+
+    @Override
+    public void receive(int worker, ByteBuffer into) throws IOException
+    {
+        Connection connection = connections[worker];
+        byte[] message;
+
+        try
+        {
+            message = connection.messages.take();
+        } catch (InterruptedException e)
+        {
+            Thread.currentThread().interrupt();
+            throw new InterruptedIOException("Interrupted while waiting for worker " + worker);
+        }
+
+        if(message == Connection.CLOSED)
+            throw new IOException("The connection to worker " + worker + " is gone", connection.failure);
+
+        int length = message.length - Integer.BYTES;
+        int actual = ByteBuffer.wrap(message).getInt(length);
+
+        if(actual > into.capacity())
+            throw new IOException("A message of " + actual + " bytes doesn't fit into " + into.capacity());
+
+        into.clear();
+        into.put(message, 0, actual);
+        into.flip();
+        connection.spare.offer(message);
+    }
+
+    @Override
+    public void close() throws IOException
+    {
+        for(Connection connection : connections)
+            if(connection != null)
+                connection.socket.close();
+    }
+
+    /**
+     * A socket to another worker and the messages that came through it
+     */
+    private static final class Connection
+    {
+        //put into the queue when the socket closes
+        private static final byte[] CLOSED = new byte[0];
+
+        private final Socket socket;
+        private final DataOutputStream out;
+        private final DataInputStream in;
+        //the messages, with their length in the last four bytes since the arrays are reused
+        private final BlockingQueue<byte[]> messages = new LinkedBlockingQueue<>();
+        private final BlockingQueue<byte[]> spare = new ArrayBlockingQueue<>(SPARE);
+        private final Thread reader;
+        private volatile IOException failure;
+
+        Connection(int worker, Socket socket) throws IOException
+        {
+            this.socket = socket;
+            this.out = new DataOutputStream(new BufferedOutputStream(socket.getOutputStream(), 1 << 16));
+            this.in = new DataInputStream(new BufferedInputStream(socket.getInputStream(), 1 << 16));
+            this.reader = new Thread(this::read, "Transport from worker " + worker);
+            reader.setDaemon(true);
+        }
+
+        private void read()
+        {
+            try
+            {
+                while(true)
+                {
+                    int length = in.readInt();
+                    byte[] message = spare.poll();
+
+                    if(message == null || message.length < length + Integer.BYTES)
+                        message = new byte[length + Integer.BYTES];
+
+                    in.readFully(message, 0, length);
+                    ByteBuffer.wrap(message).putInt(message.length - Integer.BYTES, length);
+                    messages.add(message);
+                }
+            } catch (IOException e)
+            {
+                //an EOFException when the other worker closed its transport
+                failure = e;
+            } finally
+            {
+                messages.add(CLOSED);
+            }
+        }
+    }
+}
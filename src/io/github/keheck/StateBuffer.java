@@ -0,0 +1,311 @@
+package io.github.keheck;
+
+import java.nio.ByteBuffer;
+import java.nio.ByteOrder;
+import java.util.Arrays;
+
+/**
+ * A flat, row-major plane holding the state of every cell of a {@link Grid}
+ * (the grid decides at which index a cell lives, see {@link Grid#index(int, int)}).
+ * The {@link Grid} keeps two of them and swaps them after every generation.
+ *
+ * The width of a single element is picked by {@link #create(int, int, boolean)} from
+ * {@link Cell#getStates()}, so a cell takes up one, two or four bytes. The states are
+ * kept in an array, or outside of the heap in direct {@link ByteBuffer}s (see
+ * {@link Initializer#setOffHeap(boolean)}).
+ */
+
+abstract class StateBuffer
+{
+    final int size;
+
+    StateBuffer(int size) { this.size = size; }
+
+    /**
+     * creates a buffer on the heap, see {@link #create(int, int, boolean)}
+     */
+    static StateBuffer create(int size, int states) { return create(size, states, false); }
+
+    /**
+     * creates a buffer that is just wide enough to hold {@code states} states
+     * @param size the number of cells
+     * @param states the number of states a cell can be in (see {@link Cell#getStates()})
+     * @param offHeap whether to keep the states outside of the heap
+     * @return the new buffer, with every cell in state 0
+     */
+    static StateBuffer create(int size, int states, boolean offHeap)
+    {
+        if(offHeap)
+        {
+            if(states <= 1 << 8)
+                return new DirectBytes(size);
+            else if(states <= 1 << 16)
+                return new DirectShorts(size);
+            else
+                return new DirectInts(size);
+        }
+        else if(states <= 1 << 8)
+            return new Bytes(size);
+        else if(states <= 1 << 16)
+            return new Shorts(size);
+        else
+            return new Ints(size);
+    }
+
+    /**
+     * @return how many states a buffer created for {@code states} states can hold, since it's as wide as a byte,
+     *         a short or an int
+     */
+    static long capacity(int states)
+    {
+        return states <= 1 << 8 ? 1 << 8 : states <= 1 << 16 ? 1 << 16 : Integer.MAX_VALUE + 1L;
+    }
+
+    abstract int get(int index);
+
+    abstract void set(int index, int state);
+
+    abstract void fill(int state);
+
+    /**
+     * @return whether the states are kept outside of the heap
+     */
+    boolean isOffHeap() { return false; }
+
+    /**
+     * @return the array holding the states if they're kept in a {@code byte[]}, otherwise {@code null}
+     */
+    byte[] bytes() { return null; }
+
+    /**
+     * copies every state into the given buffer, which has to be at least as big
+     */
+    void copyTo(StateBuffer buffer) { copy(0, buffer, 0, size); }
+
+    /**
+     * copies {@code length} states from {@code from} on into the given buffer at {@code to},
+     * in bulk if both are arrays of the same width
+     */
+    void copy(int from, StateBuffer buffer, int to, int length)
+    {
+        for(int i = 0; i < length; i++)
+            buffer.set(to+i, get(from+i));
+    }
+
+    /**
+     * @param buffer a buffer at least {@code to} big
+     * @return the first index between {@code from} and {@code to} at which the buffers differ, or {@code to}
+     */
+    int mismatch(StateBuffer buffer, int from, int to)
+    {
+        while(from < to && get(from) == buffer.get(from))
+            from++;
+
+        return from;
+    }
+
+    private static final class Bytes extends StateBuffer
+    {
+        private final byte[] states;
+
+        Bytes(int size)
+        {
+            super(size);
+            states = new byte[size];
+        }
+
+        @Override
+        int get(int index) { return states[index] & 0xFF; }
+
+        @Override
+        void set(int index, int state) { states[index] = (byte)state; }
+
+        @Override
+        byte[] bytes() { return states; }
+
+        @Override
+        void fill(int state) { Arrays.fill(states, (byte)state); }
+
+        @Override
+        void copy(int from, StateBuffer buffer, int to, int length)
+        {
+            if(buffer instanceof Bytes)
+                System.arraycopy(states, from, ((Bytes)buffer).states, to, length);
+            else
+                super.copy(from, buffer, to, length);
+        }
+
+        @Override
+        int mismatch(StateBuffer buffer, int from, int to)
+        {
+            if(!(buffer instanceof Bytes))
+                return super.mismatch(buffer, from, to);
+
+            byte[] other = ((Bytes)buffer).states;
+
+            while(from < to && states[from] == other[from])
+                from++;
+
+            return from;
+        }
+    }
+
+    private static final class Shorts extends StateBuffer
+    {
+        private final short[] states;
+
+        Shorts(int size)
+        {
+            super(size);
+            states = new short[size];
+        }
+
+        @Override
+        int get(int index) { return states[index] & 0xFFFF; }
+
+        @Override
+        void set(int index, int state) { states[index] = (short)state; }
+
+        @Override
+        void fill(int state) { Arrays.fill(states, (short)state); }
+
+        @Override
+        void copy(int from, StateBuffer buffer, int to, int length)
+        {
+            if(buffer instanceof Shorts)
+                System.arraycopy(states, from, ((Shorts)buffer).states, to, length);
+            else
+                super.copy(from, buffer, to, length);
+        }
+
+        @Override
+        int mismatch(StateBuffer buffer, int from, int to)
+        {
+            if(!(buffer instanceof Shorts))
+                return super.mismatch(buffer, from, to);
+
+            short[] other = ((Shorts)buffer).states;
+
+            while(from < to && states[from] == other[from])
+                from++;
+
+            return from;
+        }
+    }
+
+    private static final class Ints extends StateBuffer
+    {
+        private final int[] states;
+
+        Ints(int size)
+        {
+            super(size);
+            states = new int[size];
+        }
+
+        @Override
+        int get(int index) { return states[index]; }
+
+        @Override
+        void set(int index, int state) { states[index] = state; }
+
+        @Override
+        void fill(int state) { Arrays.fill(states, state); }
+
+        @Override
+        void copy(int from, StateBuffer buffer, int to, int length)
+        {
+            if(buffer instanceof Ints)
+                System.arraycopy(states, from, ((Ints)buffer).states, to, length);
+            else
+                super.copy(from, buffer, to, length);
+        }
+
+        @Override
+        int mismatch(StateBuffer buffer, int from, int to)
+        {
+            if(!(buffer instanceof Ints))
+                return super.mismatch(buffer, from, to);
+
+            int[] other = ((Ints)buffer).states;
+
+            while(from < to && states[from] == other[from])
+                from++;
+
+            return from;
+        }
+    }
+
+    /**
+     * Keeps the states in direct {@link ByteBuffer}s. A buffer can't hold more than 2 GB,
+     * so they are split into segments of {@link #SEGMENT} states. Only the absolute
+     * methods of the byte buffers are used, so several threads can read at once; copying
+     * and comparing goes state by state.
+     */
+    private abstract static class Direct extends StateBuffer
+    {
+        static final int SHIFT = 28;
+        static final int SEGMENT = 1 << SHIFT;
+        static final int MASK = SEGMENT-1;
+
+        final ByteBuffer[] segments;
+
+        /**
+         * @param bytes how many bytes a state takes up
+         */
+        Direct(int size, int bytes)
+        {
+            super(size);
+            segments = new ByteBuffer[Math.max(1, (int)(((long)size + MASK) >>> SHIFT))];
+
+            for(int i = 0; i < segments.length; i++)
+            {
+                int states = Math.min(size - i*SEGMENT, SEGMENT);
+                segments[i] = ByteBuffer.allocateDirect(states*bytes).order(ByteOrder.nativeOrder());
+            }
+        }
+
+        @Override
+        boolean isOffHeap() { return true; }
+
+        @Override
+        void fill(int state)
+        {
+            for(int index = 0; index < size; index++)
+                set(index, state);
+        }
+    }
+
+    private static final class DirectBytes extends Direct
+    {
+        DirectBytes(int size) { super(size, 1); }
+
+        @Override
+        int get(int index) { return segments[index >>> SHIFT].get(index & MASK) & 0xFF; }
+
+        @Override
+        void set(int index, int state) { segments[index >>> SHIFT].put(index & MASK, (byte)state); }
+    }
+
+    private static final class DirectShorts extends Direct
+    {
+        DirectShorts(int size) { super(size, 2); }
+
+        @Override
+        int get(int index) { return segments[index >>> SHIFT].getShort((index & MASK) << 1) & 0xFFFF; }
+
+        @Override
+        void set(int index, int state) { segments[index >>> SHIFT].putShort((index & MASK) << 1, (short)state); }
+    }
+
+    private static final class DirectInts extends Direct
+    {
+        DirectInts(int size) { super(size, 4); }
+
+        @Override
+        int get(int index) { return segments[index >>> SHIFT].getInt((index & MASK) << 2); }
+
+        @Override
+        void set(int index, int state) { segments[index >>> SHIFT].putInt((index & MASK) << 2, state); }
+    }
+}
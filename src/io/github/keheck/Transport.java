@@ -0,0 +1,43 @@
+package io.github.keheck;
+
+import java.io.Closeable;
+import java.io.IOException;
+import java.nio.ByteBuffer;
+
+/**
+ * Carries messages between the workers of a partitioned grid (see {@link Partition}).
+ * Every worker has its own transport, which knows its rank among the others.
+ *
+ * Messages from one worker to another have to arrive in the order they were sent;
+ * {@link #send(int, ByteBuffer)} shouldn't wait for the other worker to receive them,
+ * otherwise two workers sending to each other would wait forever.
+ *
+ * @see InProcessTransport
+ * @see SocketTransport
+ */
+
+public interface Transport extends Closeable
+{
+    /**
+     * @return the number of this worker, from 0 to {@link #getWorkers()}-1
+     */
+    int getRank();
+
+    /**
+     * @return how many workers there are
+     */
+    int getWorkers();
+
+    /**
+     * sends the remaining bytes of the buffer to the given worker; the buffer can be
+     * reused as soon as this returns
+     */
+    void send(int worker, ByteBuffer message) throws IOException;
+
+    /**
+     * waits for the next message from the given worker
+     * @param into receives the message, it's cleared before and flipped afterwards
+     * @throws IOException if the message doesn't fit or the worker is gone
+     */
+    void receive(int worker, ByteBuffer into) throws IOException;
+}